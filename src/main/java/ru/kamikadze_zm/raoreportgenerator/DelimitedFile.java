@@ -0,0 +1,166 @@
+package ru.kamikadze_zm.raoreportgenerator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение и запись файлов с разделителем (csv, tsv) в UTF-8. Значения с разделителем, кавычками
+ * или переводом строки заключаются в кавычки, кавычки внутри значения удваиваются
+ */
+public class DelimitedFile {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char QUOTE = '"';
+    private static final char BOM = '\uFEFF';
+
+    /**
+     *
+     * @param file файл
+     * @param delimiter разделитель значений
+     * @return строки файла, включая строку заголовков
+     * @throws IOException в случае ошибки чтения
+     */
+    public static List<String[]> read(File file, char delimiter) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            boolean afterQuote = false;
+            boolean rowStarted = false;
+            boolean first = true;
+            char[] buffer = new char[BUFFER_SIZE];
+            int n;
+            while ((n = r.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char c = buffer[i];
+                    if (first) {
+                        first = false;
+                        if (c == BOM) {
+                            continue;
+                        }
+                    }
+                    if (quoted) {
+                        if (c == QUOTE) {
+                            quoted = false;
+                            afterQuote = true;
+                        } else {
+                            value.append(c);
+                        }
+                        continue;
+                    }
+                    if (afterQuote) {
+                        afterQuote = false;
+                        //удвоенная кавычка внутри значения
+                        if (c == QUOTE) {
+                            value.append(QUOTE);
+                            quoted = true;
+                            continue;
+                        }
+                    }
+                    if (c == QUOTE) {
+                        quoted = true;
+                        rowStarted = true;
+                    } else if (c == delimiter) {
+                        values.add(value.toString());
+                        value.setLength(0);
+                        rowStarted = true;
+                    } else if (c == '\n') {
+                        if (rowStarted) {
+                            values.add(value.toString());
+                            rows.add(values.toArray(new String[values.size()]));
+                        }
+                        values.clear();
+                        value.setLength(0);
+                        rowStarted = false;
+                    } else if (c != '\r') {
+                        value.append(c);
+                        rowStarted = true;
+                    }
+                }
+            }
+            if (rowStarted) {
+                values.add(value.toString());
+                rows.add(values.toArray(new String[values.size()]));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Построчная запись файла через буфер
+     */
+    public static class Writer implements AutoCloseable {
+
+        private final BufferedWriter writer;
+        private final char delimiter;
+
+        /**
+         *
+         * @param filePath путь к файлу
+         * @param delimiter разделитель значений
+         * @throws IOException если файл не удалось открыть для записи
+         */
+        public Writer(String filePath, char delimiter) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8), BUFFER_SIZE);
+            this.delimiter = delimiter;
+        }
+
+        /**
+         *
+         * @param values значения строки ({@code null} записывается как пустое значение)
+         * @throws IOException в случае ошибки записи
+         */
+        public void writeRow(String[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(delimiter);
+                }
+                if (values[i] != null) {
+                    writeValue(values[i]);
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeValue(String value) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == delimiter || c == QUOTE || c == '\n' || c == '\r') {
+                    quote = true;
+                    break;
+                }
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write(QUOTE);
+            int start = 0;
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) == QUOTE) {
+                    writer.write(value, start, i - start + 1);
+                    writer.write(QUOTE);
+                    start = i + 1;
+                }
+            }
+            writer.write(value, start, value.length() - start);
+            writer.write(QUOTE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
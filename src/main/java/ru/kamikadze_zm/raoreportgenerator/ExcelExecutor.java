@@ -0,0 +1,89 @@
+package ru.kamikadze_zm.raoreportgenerator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Отдельный пул потоков для чтения и записи excel файлов, чтобы независимые файлы обрабатывались одновременно
+ */
+public class ExcelExecutor {
+
+    private static final Logger LOG = LogManager.getLogger(ExcelExecutor.class);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "excel-io-" + THREAD_COUNTER.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static <T> CompletableFuture<T> supply(ExcelCallable<T> callable) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return callable.call();
+            } catch (ExcelException e) {
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR);
+    }
+
+    public static CompletableFuture<Void> run(ExcelRunnable runnable) {
+        return supply(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Ожидает завершения задачи
+     *
+     * @param future задача
+     * @return результат задачи
+     * @throws ExcelException если задача завершилась с ошибкой excel
+     */
+    public static <T> T get(CompletableFuture<T> future) throws ExcelException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExcelException("Обработка excel файлов прервана");
+        } catch (ExecutionException e) {
+            throw toExcelException(e.getCause());
+        }
+    }
+
+    /**
+     *
+     * @param t исключение, с которым завершилась задача
+     * @return исходное {@link ExcelException} или новое с общим сообщением
+     */
+    public static ExcelException toExcelException(Throwable t) {
+        while (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof ExcelException) {
+            return (ExcelException) t;
+        }
+        LOG.error("Excel task exception: ", t);
+        return new ExcelException("Произошла непредвиденная ошибка");
+    }
+
+    @FunctionalInterface
+    public static interface ExcelCallable<T> {
+
+        T call() throws ExcelException;
+    }
+
+    @FunctionalInterface
+    public static interface ExcelRunnable {
+
+        void run() throws ExcelException;
+    }
+}
@@ -0,0 +1,145 @@
+package ru.kamikadze_zm.raoreportgenerator;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Файл-спутник excel файла с теми же строками в формате json lines. Позволяет повторно прочитать
+ * промежуточные результаты без разбора xlsx. Первая строка - заголовок с контрольными суммами
+ * excel файла и строк, при любом несовпадении спутник игнорируется
+ */
+public class ExcelSidecar {
+
+    private static final Logger LOG = LogManager.getLogger(ExcelSidecar.class);
+
+    private static final String EXT = ".jsonl";
+    private static final int VERSION = 1;
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Записывает спутник для уже сохраненного excel файла
+     *
+     * @param workbookPath путь к excel файлу
+     * @param rows строки в порядке колонок excel файла ({@code null} записывается как пустая строка)
+     */
+    public static void write(String workbookPath, List<String[]> rows) {
+        File workbook = new File(workbookPath);
+        File sidecar = getSidecarFile(workbook);
+        try {
+            List<String> lines = new ArrayList<>(rows.size());
+            CRC32 rowsCrc = new CRC32();
+            for (String[] row : rows) {
+                String[] values = new String[row.length];
+                for (int i = 0; i < row.length; i++) {
+                    values[i] = row[i] != null ? row[i] : "";
+                }
+                String line = GSON.toJson(values);
+                rowsCrc.update(line.getBytes(StandardCharsets.UTF_8));
+                lines.add(line);
+            }
+            Header header = new Header(workbook.length(), checksum(workbook), rows.size(), rowsCrc.getValue());
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(sidecar), StandardCharsets.UTF_8))) {
+                writer.write(GSON.toJson(header));
+                writer.newLine();
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Cannot write sidecar file: " + sidecar.getAbsolutePath(), e);
+            sidecar.delete();
+        }
+    }
+
+    /**
+     *
+     * @param workbook excel файл
+     * @return строки из спутника или {@code null}, если спутник отсутствует или не соответствует excel файлу
+     */
+    public static List<String[]> read(File workbook) {
+        File sidecar = getSidecarFile(workbook);
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sidecar), StandardCharsets.UTF_8))) {
+            Header header = GSON.fromJson(reader.readLine(), Header.class);
+            if (header == null || header.version != VERSION
+                    || header.workbookLength != workbook.length()
+                    || header.workbookCrc != checksum(workbook)) {
+                LOG.info("Sidecar file does not match workbook: {}", sidecar.getAbsolutePath());
+                return null;
+            }
+            List<String[]> rows = new ArrayList<>(header.rows);
+            CRC32 rowsCrc = new CRC32();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                rowsCrc.update(line.getBytes(StandardCharsets.UTF_8));
+                rows.add(GSON.fromJson(line, String[].class));
+            }
+            if (rows.size() != header.rows || rowsCrc.getValue() != header.rowsCrc) {
+                LOG.warn("Sidecar file is corrupted: {}", sidecar.getAbsolutePath());
+                return null;
+            }
+            LOG.info("Rows loaded from sidecar file: {}", sidecar.getAbsolutePath());
+            return rows;
+        } catch (IOException | JsonParseException e) {
+            LOG.warn("Cannot read sidecar file: " + sidecar.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private static File getSidecarFile(File workbook) {
+        return new File(workbook.getPath() + EXT);
+    }
+
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static class Header {
+
+        private int version = VERSION;
+        private long workbookLength;
+        private long workbookCrc;
+        private int rows;
+        private long rowsCrc;
+
+        public Header() {
+        }
+
+        public Header(long workbookLength, long workbookCrc, int rows, long rowsCrc) {
+            this.workbookLength = workbookLength;
+            this.workbookCrc = workbookCrc;
+            this.rows = rows;
+            this.rowsCrc = rowsCrc;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.stage.Stage;
 import ru.kamikadze_zm.raoreportgenerator.controller.MainController;
+import ru.kamikadze_zm.raoreportgenerator.kinopoisk.KinopoiskExecutor;
 import ru.kamikadze_zm.raoreportgenerator.settings.Settings;
 
 public class MainApp extends Application {
@@ -43,6 +44,11 @@ public class MainApp extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() throws Exception {
+        KinopoiskExecutor.shutdown();
+    }
+
     public static void showWriteAccessMessages() {
         if (!SETTINGS.canWriteToInputDir()) {
             MainApp.showMessage(DENIED_WRITE_ACCESS_TITLE, DENIED_WRITE_ACCESS_MESSAGE + SETTINGS.getInputDir()
@@ -68,6 +74,7 @@ public class MainApp extends Application {
     }
 
     public static void exit(int status) {
+        KinopoiskExecutor.shutdown();
         System.exit(status);
     }
 
@@ -266,9 +266,11 @@ public class MovieInfo implements Comparable<MovieInfo> {
 
         MOVIE("Не найден фильм"),
         CANDIDATE("Найден кандидат"),
+        FUZZY("Нечеткое совпадение с СТП"),
         DIRECTOR("Не найден режиссер"),
         COMPOSER("Не найден композитор"),
         STUDIO("Не найдена киностудия"),
+        STUDIO_SKIPPED("Киностудия не загружалась"),
         RELEASE_DATE_TIME("Не найдены дата/время выхода"),
         CAPTCHA("Капча"),
         ERROR("Ошибка");
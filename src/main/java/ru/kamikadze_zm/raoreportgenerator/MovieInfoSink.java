@@ -0,0 +1,15 @@
+package ru.kamikadze_zm.raoreportgenerator;
+
+/**
+ * Приемник строк с информацией о фильмах
+ */
+public interface MovieInfoSink {
+
+    /**
+     *
+     * @param movie информация о фильме (может быть общей для нескольких строк)
+     * @param releaseDateTime дата/время выхода для этой строки
+     * @throws ExcelException в случае ошибки записи строки
+     */
+    void accept(MovieInfo movie, String releaseDateTime) throws ExcelException;
+}
@@ -0,0 +1,20 @@
+package ru.kamikadze_zm.raoreportgenerator;
+
+/**
+ * Приемник строк, который сохраняет их в файл. Файл окончательно записывается при закрытии,
+ * если перед этим вызван {@link #complete()}, иначе записанные строки отбрасываются
+ */
+public interface MovieInfoWriter extends MovieInfoSink, AutoCloseable {
+
+    /**
+     * Отмечает, что записаны все строки и файл можно сохранить при закрытии
+     */
+    void complete();
+
+    /**
+     *
+     * @throws ExcelException в случае ошибки сохранения файла
+     */
+    @Override
+    void close() throws ExcelException;
+}
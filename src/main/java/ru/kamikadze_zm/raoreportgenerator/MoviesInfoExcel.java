@@ -3,6 +3,9 @@ package ru.kamikadze_zm.raoreportgenerator;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.logging.log4j.LogManager;
@@ -16,7 +19,9 @@ import org.apache.poi.ss.usermodel.Hyperlink;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import ru.kamikadze_zm.raoreportgenerator.settings.ExportFormat;
 
 public class MoviesInfoExcel {
 
@@ -30,15 +35,18 @@ public class MoviesInfoExcel {
      */
     public static List<MovieInfo> parse(File file) throws ExcelException {
         String fileName = file.getName();
-        int index = fileName.lastIndexOf(".");
-        String ext = "";
-        if (index > 0) {
-            ext = fileName.substring(index);
+        ExportFormat format = ExportFormat.forFileName(fileName);
+        if (format == null) {
+            throw new ExcelException(ExcelException.getExtMessage(fileName, MainApp.SETTINGS.getExcelExt()));
         }
 
-        String excelExt = MainApp.SETTINGS.getExcelExt();
-        if (!ext.equalsIgnoreCase(excelExt)) {
-            throw new ExcelException(ExcelException.getExtMessage(fileName, excelExt));
+        if (format.isDelimited()) {
+            return parseRows(readDelimited(file, format), true);
+        }
+
+        List<String[]> sidecarRows = ExcelSidecar.read(file);
+        if (sidecarRows != null) {
+            return parseRows(sidecarRows, true);
         }
 
         Workbook wb;
@@ -82,6 +90,167 @@ public class MoviesInfoExcel {
         return moviesInfo;
     }
 
+    /**
+     *
+     * @param file файл рао отчета (объединенные результаты)
+     * @return строки рао отчета
+     * @throws ExcelException в случае ошибки чтения рао отчета из excel
+     */
+    public static List<MovieInfo> parseRao(File file) throws ExcelException {
+        String fileName = file.getName();
+        ExportFormat format = ExportFormat.forFileName(fileName);
+        if (format == null) {
+            throw new ExcelException(ExcelException.getExtMessage(fileName, MainApp.SETTINGS.getExcelExt()));
+        }
+
+        if (format.isDelimited()) {
+            return parseRows(readDelimited(file, format), false);
+        }
+
+        Workbook wb;
+        try {
+            wb = new XSSFWorkbook(file);
+        } catch (IOException | InvalidFormatException e) {
+            LOG.error("Cannot read excel rao file: ", e);
+            throw new ExcelException(ExcelException.getIOMessage(fileName));
+        }
+
+        Sheet sheet = wb.getSheetAt(0);
+
+        List<MovieInfo> moviesInfo = new ArrayList<>();
+
+        for (int i = 1; i <= sheet.getLastRowNum(); i++) {
+            try {
+                Row row = sheet.getRow(i);
+
+                if (row.getCell(Column.NAME.getIndex(false)).getStringCellValue().isEmpty()) {
+                    continue;
+                }
+
+                MovieInfo m = new MovieInfo(
+                        row.getCell(Column.NAME.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.GENRE.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.COUNTRY.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.YEAR.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.DIRECTOR.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.COMPOSER.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.STUDIO.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.DURATION.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.DATETIME.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.NOT_FOUND.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.LINK.getIndex(false)).getStringCellValue(),
+                        row.getCell(Column.KINOPOISK_NAME.getIndex(false)).getStringCellValue());
+                m.setStpName(row.getCell(Column.STP_NAME.getIndex(false)).getStringCellValue());
+                moviesInfo.add(m);
+            } catch (Exception e) {
+                LOG.warn("Rao parse exception: ", e);
+            }
+        }
+        return moviesInfo;
+    }
+
+    /**
+     *
+     * @param rows строки в порядке колонок (из спутника или файла с разделителем, без заголовков)
+     * @param kinopoiskMovieInfo строки в формате kinopoiska, иначе в формате рао отчета
+     */
+    private static List<MovieInfo> parseRows(List<String[]> rows, boolean kinopoiskMovieInfo) {
+        int columnCount = getColumnCount(kinopoiskMovieInfo);
+        List<MovieInfo> moviesInfo = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            if (row.length < columnCount) {
+                LOG.warn("Movies info row has {} columns instead of {}: {}", row.length, columnCount, String.join(" | ", row));
+                continue;
+            }
+            if (row[Column.NAME.getIndex(kinopoiskMovieInfo)].isEmpty()) {
+                continue;
+            }
+            if (kinopoiskMovieInfo) {
+                moviesInfo.add(new MovieInfo(
+                        row[Column.NAME.getIndex(true)],
+                        row[Column.ORIGINAL_NAME.getIndex(true)],
+                        row[Column.GENRE.getIndex(true)],
+                        row[Column.COUNTRY.getIndex(true)],
+                        row[Column.YEAR.getIndex(true)],
+                        row[Column.DIRECTOR.getIndex(true)],
+                        row[Column.COMPOSER.getIndex(true)],
+                        row[Column.STUDIO.getIndex(true)],
+                        row[Column.DURATION.getIndex(true)],
+                        row[Column.DATETIME.getIndex(true)],
+                        row[Column.NOT_FOUND.getIndex(true)],
+                        row[Column.LINK.getIndex(true)],
+                        row[Column.KINOPOISK_NAME.getIndex(true)]));
+            } else {
+                MovieInfo m = new MovieInfo(
+                        row[Column.NAME.getIndex(false)],
+                        row[Column.GENRE.getIndex(false)],
+                        row[Column.COUNTRY.getIndex(false)],
+                        row[Column.YEAR.getIndex(false)],
+                        row[Column.DIRECTOR.getIndex(false)],
+                        row[Column.COMPOSER.getIndex(false)],
+                        row[Column.STUDIO.getIndex(false)],
+                        row[Column.DURATION.getIndex(false)],
+                        row[Column.DATETIME.getIndex(false)],
+                        row[Column.NOT_FOUND.getIndex(false)],
+                        row[Column.LINK.getIndex(false)],
+                        row[Column.KINOPOISK_NAME.getIndex(false)]);
+                m.setStpName(row[Column.STP_NAME.getIndex(false)]);
+                moviesInfo.add(m);
+            }
+        }
+        return moviesInfo;
+    }
+
+    private static List<String[]> readDelimited(File file, ExportFormat format) throws ExcelException {
+        List<String[]> rows;
+        try {
+            rows = DelimitedFile.read(file, format.getDelimiter());
+        } catch (IOException e) {
+            LOG.error("Cannot read delimited movies info file: ", e);
+            throw new ExcelException(ExcelException.getIOMessage(file.getName()));
+        }
+        //первая строка - заголовки
+        return rows.isEmpty() ? rows : rows.subList(1, rows.size());
+    }
+
+    private static int getColumnCount(boolean kinopoiskMovieInfo) {
+        return kinopoiskMovieInfo ? Column.KINOPOISK_NAME.getIndex(true) + 1 : Column.STP_NAME.getIndex(false) + 1;
+    }
+
+    private static String[] getHeaders(boolean kinopoiskMovieInfo) {
+        String[] row = new String[getColumnCount(kinopoiskMovieInfo)];
+        for (Column c : Column.values()) {
+            if ((c == Column.ORIGINAL_NAME && !kinopoiskMovieInfo) || (c == Column.STP_NAME && kinopoiskMovieInfo)) {
+                continue;
+            }
+            row[c.getIndex(kinopoiskMovieInfo)] = c.getName();
+        }
+        return row;
+    }
+
+    private static String[] toRow(MovieInfo m, String releaseDateTime, boolean kinopoiskMovieInfo) {
+        String[] row = new String[getColumnCount(kinopoiskMovieInfo)];
+        row[Column.NAME.getIndex(kinopoiskMovieInfo)] = m.getName();
+        if (kinopoiskMovieInfo) {
+            row[Column.ORIGINAL_NAME.getIndex(kinopoiskMovieInfo)] = m.getOriginalName();
+        }
+        row[Column.DATETIME.getIndex(kinopoiskMovieInfo)] = releaseDateTime;
+        row[Column.YEAR.getIndex(kinopoiskMovieInfo)] = m.getYear();
+        row[Column.GENRE.getIndex(kinopoiskMovieInfo)] = m.getGenre();
+        row[Column.STUDIO.getIndex(kinopoiskMovieInfo)] = m.getStudio();
+        row[Column.COUNTRY.getIndex(kinopoiskMovieInfo)] = m.getCountry();
+        row[Column.DIRECTOR.getIndex(kinopoiskMovieInfo)] = m.getDirector();
+        row[Column.COMPOSER.getIndex(kinopoiskMovieInfo)] = m.getComposer();
+        row[Column.DURATION.getIndex(kinopoiskMovieInfo)] = m.getDuration();
+        row[Column.NOT_FOUND.getIndex(kinopoiskMovieInfo)] = m.getNotFound();
+        row[Column.LINK.getIndex(kinopoiskMovieInfo)] = m.getLink();
+        row[Column.KINOPOISK_NAME.getIndex(kinopoiskMovieInfo)] = m.getKinopoiskName();
+        if (!kinopoiskMovieInfo) {
+            row[Column.STP_NAME.getIndex(kinopoiskMovieInfo)] = m.getStpName();
+        }
+        return row;
+    }
+
     /**
      *
      * @param moviesInfo список фильмов в формате рао отчета
@@ -103,58 +272,114 @@ public class MoviesInfoExcel {
         if (moviesInfo.isEmpty()) {
             return;
         }
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet();
-
-        sheet.setColumnWidth(Column.NAME.getIndex(kinopoiskMovieInfo), Column.NAME.getWidth());
-        if (kinopoiskMovieInfo) {
-            sheet.setColumnWidth(Column.ORIGINAL_NAME.getIndex(kinopoiskMovieInfo), Column.ORIGINAL_NAME.getWidth());
+        try (MovieInfoWriter writer = openWriter(filePath, kinopoiskMovieInfo)) {
+            for (MovieInfo m : moviesInfo) {
+                writer.accept(m, m.getReleaseDateTime());
+            }
+            writer.complete();
         }
-        sheet.setColumnWidth(Column.DATETIME.getIndex(kinopoiskMovieInfo), Column.DATETIME.getWidth());
-        sheet.setColumnWidth(Column.YEAR.getIndex(kinopoiskMovieInfo), Column.YEAR.getWidth());
-        sheet.setColumnWidth(Column.GENRE.getIndex(kinopoiskMovieInfo), Column.GENRE.getWidth());
-        sheet.setColumnWidth(Column.STUDIO.getIndex(kinopoiskMovieInfo), Column.STUDIO.getWidth());
-        sheet.setColumnWidth(Column.COUNTRY.getIndex(kinopoiskMovieInfo), Column.COUNTRY.getWidth());
-        sheet.setColumnWidth(Column.DIRECTOR.getIndex(kinopoiskMovieInfo), Column.DIRECTOR.getWidth());
-        sheet.setColumnWidth(Column.COMPOSER.getIndex(kinopoiskMovieInfo), Column.COMPOSER.getWidth());
-        sheet.setColumnWidth(Column.DURATION.getIndex(kinopoiskMovieInfo), Column.DURATION.getWidth());
-        sheet.setColumnWidth(Column.NOT_FOUND.getIndex(kinopoiskMovieInfo), Column.NOT_FOUND.getWidth());
-        sheet.setColumnWidth(Column.LINK.getIndex(kinopoiskMovieInfo), Column.LINK.getWidth());
-        sheet.setColumnWidth(Column.KINOPOISK_NAME.getIndex(kinopoiskMovieInfo), Column.KINOPOISK_NAME.getWidth());
-        if (!kinopoiskMovieInfo) {
-            sheet.setColumnWidth(Column.STP_NAME.getIndex(kinopoiskMovieInfo), Column.STP_NAME.getWidth());
+        if (kinopoiskMovieInfo && !MainApp.SETTINGS.getExportFormat().isDelimited()) {
+            List<String[]> rows = new ArrayList<>(moviesInfo.size());
+            for (MovieInfo m : moviesInfo) {
+                rows.add(toRow(m, m.getReleaseDateTime(), true));
+            }
+            ExcelSidecar.write(filePath, rows);
         }
+    }
 
-        Row headersRow = sheet.createRow(0);
-        headersRow.createCell(Column.NAME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.NAME.getName());
-        if (kinopoiskMovieInfo) {
-            headersRow.createCell(Column.ORIGINAL_NAME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.ORIGINAL_NAME.getName());
-        }
-        headersRow.createCell(Column.DATETIME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.DATETIME.getName());
-        headersRow.createCell(Column.YEAR.getIndex(kinopoiskMovieInfo)).setCellValue(Column.YEAR.getName());
-        headersRow.createCell(Column.GENRE.getIndex(kinopoiskMovieInfo)).setCellValue(Column.GENRE.getName());
-        headersRow.createCell(Column.STUDIO.getIndex(kinopoiskMovieInfo)).setCellValue(Column.STUDIO.getName());
-        headersRow.createCell(Column.COUNTRY.getIndex(kinopoiskMovieInfo)).setCellValue(Column.COUNTRY.getName());
-        headersRow.createCell(Column.DIRECTOR.getIndex(kinopoiskMovieInfo)).setCellValue(Column.DIRECTOR.getName());
-        headersRow.createCell(Column.COMPOSER.getIndex(kinopoiskMovieInfo)).setCellValue(Column.COMPOSER.getName());
-        headersRow.createCell(Column.DURATION.getIndex(kinopoiskMovieInfo)).setCellValue(Column.DURATION.getName());
-        headersRow.createCell(Column.NOT_FOUND.getIndex(kinopoiskMovieInfo)).setCellValue(Column.NOT_FOUND.getName());
-        headersRow.createCell(Column.LINK.getIndex(kinopoiskMovieInfo)).setCellValue(Column.LINK.getName());
-        headersRow.createCell(Column.KINOPOISK_NAME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.KINOPOISK_NAME.getName());
-        if (!kinopoiskMovieInfo) {
-            headersRow.createCell(Column.STP_NAME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.STP_NAME.getName());
+    /**
+     * Открывает запись фильмов в формате из настроек
+     *
+     * @param filePath путь к файлу
+     * @param kinopoiskMovieInfo список фильмов в формате kinopoiska
+     * @return приемник строк, сохраняющий файл при закрытии после {@link MovieInfoWriter#complete()}
+     * @throws ExcelException если файл не удалось открыть для записи
+     */
+    public static MovieInfoWriter openWriter(String filePath, boolean kinopoiskMovieInfo) throws ExcelException {
+        ExportFormat format = MainApp.SETTINGS.getExportFormat();
+        if (format.isDelimited()) {
+            return new DelimitedWriter(filePath, kinopoiskMovieInfo, format.getDelimiter());
         }
+        return new ExcelWriter(filePath, kinopoiskMovieInfo);
+    }
 
-        CellStyle style = workbook.createCellStyle();
-        style.setWrapText(true);
+    /**
+     * Построчная запись фильмов в excel. В памяти держится только окно последних строк ({@link SXSSFWorkbook}),
+     * файл сохраняется при закрытии, если запись завершена и была записана хотя бы одна строка.
+     * Книга пишется во временный файл, который затем заменяет итоговый
+     */
+    public static class ExcelWriter implements MovieInfoWriter {
+
+        private final String filePath;
+        private final boolean kinopoiskMovieInfo;
+        private final SXSSFWorkbook workbook;
+        private final Sheet sheet;
+        private final CellStyle style;
+        private final CreationHelper createHelper;
+
+        private int rowCount = 1;
+        private boolean completed;
+
+        /**
+         *
+         * @param filePath путь к файлу
+         * @param kinopoiskMovieInfo список фильмов в формате kinopoiska
+         */
+        public ExcelWriter(String filePath, boolean kinopoiskMovieInfo) {
+            this.filePath = filePath;
+            this.kinopoiskMovieInfo = kinopoiskMovieInfo;
+            this.workbook = StreamingWorkbook.create();
+            this.sheet = workbook.createSheet();
+
+            sheet.setColumnWidth(Column.NAME.getIndex(kinopoiskMovieInfo), Column.NAME.getWidth());
+            if (kinopoiskMovieInfo) {
+                sheet.setColumnWidth(Column.ORIGINAL_NAME.getIndex(kinopoiskMovieInfo), Column.ORIGINAL_NAME.getWidth());
+            }
+            sheet.setColumnWidth(Column.DATETIME.getIndex(kinopoiskMovieInfo), Column.DATETIME.getWidth());
+            sheet.setColumnWidth(Column.YEAR.getIndex(kinopoiskMovieInfo), Column.YEAR.getWidth());
+            sheet.setColumnWidth(Column.GENRE.getIndex(kinopoiskMovieInfo), Column.GENRE.getWidth());
+            sheet.setColumnWidth(Column.STUDIO.getIndex(kinopoiskMovieInfo), Column.STUDIO.getWidth());
+            sheet.setColumnWidth(Column.COUNTRY.getIndex(kinopoiskMovieInfo), Column.COUNTRY.getWidth());
+            sheet.setColumnWidth(Column.DIRECTOR.getIndex(kinopoiskMovieInfo), Column.DIRECTOR.getWidth());
+            sheet.setColumnWidth(Column.COMPOSER.getIndex(kinopoiskMovieInfo), Column.COMPOSER.getWidth());
+            sheet.setColumnWidth(Column.DURATION.getIndex(kinopoiskMovieInfo), Column.DURATION.getWidth());
+            sheet.setColumnWidth(Column.NOT_FOUND.getIndex(kinopoiskMovieInfo), Column.NOT_FOUND.getWidth());
+            sheet.setColumnWidth(Column.LINK.getIndex(kinopoiskMovieInfo), Column.LINK.getWidth());
+            sheet.setColumnWidth(Column.KINOPOISK_NAME.getIndex(kinopoiskMovieInfo), Column.KINOPOISK_NAME.getWidth());
+            if (!kinopoiskMovieInfo) {
+                sheet.setColumnWidth(Column.STP_NAME.getIndex(kinopoiskMovieInfo), Column.STP_NAME.getWidth());
+            }
 
-        CreationHelper createHelper = workbook.getCreationHelper();
+            Row headersRow = sheet.createRow(0);
+            headersRow.createCell(Column.NAME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.NAME.getName());
+            if (kinopoiskMovieInfo) {
+                headersRow.createCell(Column.ORIGINAL_NAME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.ORIGINAL_NAME.getName());
+            }
+            headersRow.createCell(Column.DATETIME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.DATETIME.getName());
+            headersRow.createCell(Column.YEAR.getIndex(kinopoiskMovieInfo)).setCellValue(Column.YEAR.getName());
+            headersRow.createCell(Column.GENRE.getIndex(kinopoiskMovieInfo)).setCellValue(Column.GENRE.getName());
+            headersRow.createCell(Column.STUDIO.getIndex(kinopoiskMovieInfo)).setCellValue(Column.STUDIO.getName());
+            headersRow.createCell(Column.COUNTRY.getIndex(kinopoiskMovieInfo)).setCellValue(Column.COUNTRY.getName());
+            headersRow.createCell(Column.DIRECTOR.getIndex(kinopoiskMovieInfo)).setCellValue(Column.DIRECTOR.getName());
+            headersRow.createCell(Column.COMPOSER.getIndex(kinopoiskMovieInfo)).setCellValue(Column.COMPOSER.getName());
+            headersRow.createCell(Column.DURATION.getIndex(kinopoiskMovieInfo)).setCellValue(Column.DURATION.getName());
+            headersRow.createCell(Column.NOT_FOUND.getIndex(kinopoiskMovieInfo)).setCellValue(Column.NOT_FOUND.getName());
+            headersRow.createCell(Column.LINK.getIndex(kinopoiskMovieInfo)).setCellValue(Column.LINK.getName());
+            headersRow.createCell(Column.KINOPOISK_NAME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.KINOPOISK_NAME.getName());
+            if (!kinopoiskMovieInfo) {
+                headersRow.createCell(Column.STP_NAME.getIndex(kinopoiskMovieInfo)).setCellValue(Column.STP_NAME.getName());
+            }
 
-        int rowCount = 1;
-        Cell cell;
-        for (MovieInfo m : moviesInfo) {
+            this.style = workbook.createCellStyle();
+            style.setWrapText(true);
+
+            this.createHelper = workbook.getCreationHelper();
+        }
+
+        @Override
+        public void accept(MovieInfo m, String releaseDateTime) {
             Row row = sheet.createRow(rowCount);
-            cell = row.createCell(Column.NAME.getIndex(kinopoiskMovieInfo));
+            Cell cell = row.createCell(Column.NAME.getIndex(kinopoiskMovieInfo));
             cell.setCellValue(m.getName());
             cell.setCellStyle(style);
 
@@ -165,7 +390,7 @@ public class MoviesInfoExcel {
             }
 
             cell = row.createCell(Column.DATETIME.getIndex(kinopoiskMovieInfo));
-            cell.setCellValue(m.getReleaseDateTime());
+            cell.setCellValue(releaseDateTime);
             cell.setCellStyle(style);
 
             cell = row.createCell(Column.YEAR.getIndex(kinopoiskMovieInfo));
@@ -201,11 +426,14 @@ public class MoviesInfoExcel {
             cell.setCellStyle(style);
 
             cell = row.createCell(Column.LINK.getIndex(kinopoiskMovieInfo));
-            if (m.getLink() != null && !m.getLink().isEmpty()) {
+            //в рао отчете ссылка пишется текстом: каждая гиперссылка остается в памяти до сохранения книги
+            if (kinopoiskMovieInfo && m.getLink() != null && !m.getLink().isEmpty()) {
                 Hyperlink link = createHelper.createHyperlink(HyperlinkType.URL);
                 link.setAddress(m.getLink());
                 cell.setCellValue(m.getLink());
                 cell.setHyperlink(link);
+            } else if (m.getLink() != null) {
+                cell.setCellValue(m.getLink());
             } else {
                 cell.setCellValue("");
             }
@@ -224,19 +452,107 @@ public class MoviesInfoExcel {
             rowCount++;
         }
 
-        File outFile = new File(filePath);
-        try (FileOutputStream out = new FileOutputStream(outFile)) {
-            workbook.write(out);
-        } catch (Exception e) {
-            LOG.warn("Save movies info to Excel exception: ", e);
-            String message;
-            if (kinopoiskMovieInfo) {
-                message = "Ошибка сохранения результатов кинопоиска в Excel";
-            } else {
-                message = "Ошибка сохранения объединенных результатов в Excel";
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        @Override
+        public void close() throws ExcelException {
+            if (!completed || rowCount == 1) {
+                workbook.dispose();
+                return;
+            }
+            File tempFile = new File(filePath + ".tmp");
+            try {
+                try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                    workbook.write(out);
+                }
+                Files.move(tempFile.toPath(), Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e) {
+                LOG.warn("Save movies info to Excel exception: ", e);
+                String message;
+                if (kinopoiskMovieInfo) {
+                    message = "Ошибка сохранения результатов кинопоиска в Excel";
+                } else {
+                    message = "Ошибка сохранения объединенных результатов в Excel";
+                }
+                throw new ExcelException(message);
+            } finally {
+                workbook.dispose();
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Построчная запись фильмов в файл с разделителем, колонки в том же порядке, что и в excel.
+     * Строки пишутся во временный файл, который при закрытии после завершения записи заменяет итоговый
+     */
+    public static class DelimitedWriter implements MovieInfoWriter {
+
+        private final String filePath;
+        private final String tempPath;
+        private final boolean kinopoiskMovieInfo;
+        private final DelimitedFile.Writer writer;
+        private boolean completed;
+
+        /**
+         *
+         * @param filePath путь к файлу
+         * @param kinopoiskMovieInfo список фильмов в формате kinopoiska
+         * @param delimiter разделитель значений
+         * @throws ExcelException если файл не удалось открыть для записи
+         */
+        public DelimitedWriter(String filePath, boolean kinopoiskMovieInfo, char delimiter) throws ExcelException {
+            this.filePath = filePath;
+            this.tempPath = filePath + ".tmp";
+            this.kinopoiskMovieInfo = kinopoiskMovieInfo;
+            try {
+                this.writer = new DelimitedFile.Writer(tempPath, delimiter);
+                writer.writeRow(getHeaders(kinopoiskMovieInfo));
+            } catch (IOException e) {
+                LOG.warn("Cannot open delimited file for writing: " + filePath, e);
+                throw new ExcelException(getSaveMessage(kinopoiskMovieInfo));
             }
-            throw new ExcelException(message);
         }
+
+        @Override
+        public void accept(MovieInfo m, String releaseDateTime) throws ExcelException {
+            try {
+                writer.writeRow(toRow(m, releaseDateTime, kinopoiskMovieInfo));
+            } catch (IOException e) {
+                LOG.warn("Save movies info to " + filePath + " exception: ", e);
+                throw new ExcelException(getSaveMessage(kinopoiskMovieInfo));
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        @Override
+        public void close() throws ExcelException {
+            try {
+                writer.close();
+                if (completed) {
+                    Files.move(Paths.get(tempPath), Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                LOG.warn("Save movies info to " + filePath + " exception: ", e);
+                throw new ExcelException(getSaveMessage(kinopoiskMovieInfo));
+            } finally {
+                new File(tempPath).delete();
+            }
+        }
+    }
+
+    private static String getSaveMessage(boolean kinopoiskMovieInfo) {
+        if (kinopoiskMovieInfo) {
+            return "Ошибка сохранения результатов кинопоиска";
+        }
+        return "Ошибка сохранения объединенных результатов";
     }
 
     private static enum Column {
@@ -0,0 +1,262 @@
+package ru.kamikadze_zm.raoreportgenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Запись zip архива, в котором каждый файл сжимается блоками параллельно на всех ядрах.
+ * Блоки сжимаются независимо со словарем из конца предыдущего блока и сбрасываются до границы байта,
+ * поэтому вместе дают один обычный deflate поток. Zip64 не поддерживается
+ */
+public class ParallelZipWriter implements Closeable {
+
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_PENDING_BLOCKS = THREADS * 2;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    //размеры после данных (бит 3), имена в UTF-8 (бит 11)
+    private static final int FLAGS = 0x0808;
+    private static final int METHOD_DEFLATED = 8;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread t = new Thread(r, "zip-deflate-" + THREAD_COUNTER.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final OutputStream out;
+    private final int level;
+    private final int dosTime;
+    private final int dosDate;
+    private final List<Entry> entries = new ArrayList<>();
+    private long offset;
+
+    /**
+     *
+     * @param out поток для записи архива (закрывается вместе с архивом)
+     * @param level степень сжатия 0-9
+     */
+    public ParallelZipWriter(OutputStream out, int level) {
+        this.out = out;
+        this.level = level;
+        LocalDateTime now = LocalDateTime.now();
+        this.dosTime = (now.getHour() << 11) | (now.getMinute() << 5) | (now.getSecond() / 2);
+        this.dosDate = ((now.getYear() - 1980) << 9) | (now.getMonthValue() << 5) | now.getDayOfMonth();
+    }
+
+    /**
+     * Записывает файл архива, данные читаются до конца потока
+     *
+     * @param name имя файла в архиве
+     * @param data содержимое файла
+     * @throws IOException в случае ошибки чтения данных или записи архива
+     */
+    public void putEntry(String name, InputStream data) throws IOException {
+        if (entries.size() == MAX_ENTRIES) {
+            throw new IOException("Too many zip entries");
+        }
+        Entry entry = new Entry(name.getBytes(StandardCharsets.UTF_8), offset);
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(VERSION);
+        writeShort(FLAGS);
+        writeShort(METHOD_DEFLATED);
+        writeShort(dosTime);
+        writeShort(dosDate);
+        writeInt(0);
+        writeInt(0);
+        writeInt(0);
+        writeShort(entry.name.length);
+        writeShort(0);
+        write(entry.name);
+
+        CRC32 crc = new CRC32();
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        byte[] dictionary = null;
+        byte[] block = new byte[BLOCK_SIZE];
+        int length;
+        while ((length = readBlock(data, block)) > 0) {
+            crc.update(block, 0, length);
+            entry.size += length;
+            byte[] input = block;
+            int inputLength = length;
+            byte[] inputDictionary = dictionary;
+            pending.add(EXECUTOR.submit(() -> deflate(input, inputLength, inputDictionary, level, false)));
+            dictionary = Arrays.copyOfRange(block, Math.max(0, length - DICTIONARY_SIZE), length);
+            block = new byte[BLOCK_SIZE];
+            while (pending.size() >= MAX_PENDING_BLOCKS) {
+                entry.compressedSize += writeBlock(pending.poll());
+            }
+        }
+        while (!pending.isEmpty()) {
+            entry.compressedSize += writeBlock(pending.poll());
+        }
+        //пустой последний блок завершает deflate поток
+        byte[] last = deflate(new byte[0], 0, null, level, true);
+        write(last);
+        entry.compressedSize += last.length;
+        entry.crc = crc.getValue();
+        if (entry.size > MAX_SIZE || entry.compressedSize > MAX_SIZE) {
+            throw new IOException("Zip entry is too large: " + name);
+        }
+
+        writeInt(DATA_DESCRIPTOR_SIGNATURE);
+        writeInt((int) entry.crc);
+        writeInt((int) entry.compressedSize);
+        writeInt((int) entry.size);
+        entries.add(entry);
+    }
+
+    /**
+     * Записывает центральный каталог архива и закрывает поток
+     *
+     * @throws IOException в случае ошибки записи
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long centralOffset = offset;
+            for (Entry e : entries) {
+                writeInt(CENTRAL_HEADER_SIGNATURE);
+                writeShort(VERSION);
+                writeShort(VERSION);
+                writeShort(FLAGS);
+                writeShort(METHOD_DEFLATED);
+                writeShort(dosTime);
+                writeShort(dosDate);
+                writeInt((int) e.crc);
+                writeInt((int) e.compressedSize);
+                writeInt((int) e.size);
+                writeShort(e.name.length);
+                writeShort(0);
+                writeShort(0);
+                writeShort(0);
+                writeShort(0);
+                writeInt(0);
+                writeInt((int) e.offset);
+                write(e.name);
+            }
+            long centralSize = offset - centralOffset;
+            if (offset > MAX_SIZE) {
+                throw new IOException("Zip archive is too large");
+            }
+            writeInt(END_SIGNATURE);
+            writeShort(0);
+            writeShort(0);
+            writeShort(entries.size());
+            writeShort(entries.size());
+            writeInt((int) centralSize);
+            writeInt((int) centralOffset);
+            writeShort(0);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] deflate(byte[] input, int length, byte[] dictionary, int level, boolean finish) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input, 0, length);
+            ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            if (finish) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    result.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    result.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            return result.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private int writeBlock(Future<byte[]> future) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Compression interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+        write(compressed);
+        return compressed.length;
+    }
+
+    private static int readBlock(InputStream in, byte[] block) throws IOException {
+        int length = 0;
+        int n;
+        while (length < block.length && (n = in.read(block, length, block.length - length)) != -1) {
+            length += n;
+        }
+        return length;
+    }
+
+    private void write(byte[] b) throws IOException {
+        out.write(b);
+        offset += b.length;
+    }
+
+    private void writeShort(int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        offset += 2;
+    }
+
+    private void writeInt(int v) throws IOException {
+        writeShort(v & 0xffff);
+        writeShort((v >>> 16) & 0xffff);
+    }
+
+    private static class Entry {
+
+        private final byte[] name;
+        private final long offset;
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        public Entry(byte[] name, long offset) {
+            this.name = name;
+            this.offset = offset;
+        }
+    }
+}
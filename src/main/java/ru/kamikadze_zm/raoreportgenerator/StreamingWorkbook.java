@@ -0,0 +1,126 @@
+package ru.kamikadze_zm.raoreportgenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * {@link SXSSFWorkbook}, который при сохранении сжимает файлы xlsx архива с заданной степенью сжатия:
+ * обычным {@link ZipOutputStream} или, если включено, параллельно ({@link ParallelZipWriter})
+ */
+public class StreamingWorkbook extends SXSSFWorkbook {
+
+    private static final String EMPTY_SHEET_DATA = "<sheetData/>";
+    private static final String SHEET_DATA_END = "</sheetData>";
+
+    private final int compressionLevel;
+    private final boolean parallel;
+
+    /**
+     *
+     * @param compressionLevel степень сжатия 0-9
+     * @param parallel сжимать параллельно
+     */
+    public StreamingWorkbook(int compressionLevel, boolean parallel) {
+        this.compressionLevel = compressionLevel;
+        this.parallel = parallel;
+    }
+
+    /**
+     *
+     * @return книга со сжатием из настроек
+     */
+    public static StreamingWorkbook create() {
+        return new StreamingWorkbook(MainApp.SETTINGS.getCompressionLevel(), MainApp.SETTINGS.isParallelCompression());
+    }
+
+    @Override
+    protected void injectData(ZipEntrySource zipEntrySource, OutputStream out) throws IOException {
+        Map<String, SXSSFSheet> sheets = new HashMap<>();
+        for (int i = 0; i < getNumberOfSheets(); i++) {
+            String partName = getXSSFWorkbook().getSheetAt(i).getPackagePart().getPartName().getName();
+            sheets.put(partName.substring(1), getSheetAt(i));
+        }
+        try {
+            if (parallel) {
+                try (ParallelZipWriter zip = new ParallelZipWriter(out, compressionLevel)) {
+                    copyEntries(zipEntrySource, sheets, zip::putEntry);
+                }
+            } else {
+                try (ZipOutputStream zip = new ZipOutputStream(out)) {
+                    zip.setLevel(compressionLevel);
+                    copyEntries(zipEntrySource, sheets, (name, data) -> {
+                        zip.putNextEntry(new ZipEntry(name));
+                        IOUtils.copy(data, zip);
+                        zip.closeEntry();
+                    });
+                }
+            }
+        } finally {
+            zipEntrySource.close();
+        }
+    }
+
+    private static void copyEntries(ZipEntrySource zipEntrySource, Map<String, SXSSFSheet> sheets, EntryWriter zip)
+            throws IOException {
+        Enumeration<? extends ZipEntry> en = zipEntrySource.getEntries();
+        while (en.hasMoreElements()) {
+            ZipEntry ze = en.nextElement();
+            try (InputStream is = zipEntrySource.getInputStream(ze)) {
+                SXSSFSheet sheet = sheets.get(ze.getName());
+                if (sheet == null) {
+                    zip.putEntry(ze.getName(), is);
+                    continue;
+                }
+                try (InputStream rows = sheet.getWorksheetXMLInputStream()) {
+                    zip.putEntry(ze.getName(), injectRows(ze.getName(), is, rows));
+                }
+            }
+        }
+    }
+
+    /**
+     * Вставляет строки из временного файла листа в xml листа из шаблона (шаблон небольшой, читается целиком)
+     */
+    private static InputStream injectRows(String name, InputStream template, InputStream rows) throws IOException {
+        String xml = new String(IOUtils.toByteArray(template), StandardCharsets.UTF_8);
+        String head;
+        String tail;
+        int index = xml.indexOf(EMPTY_SHEET_DATA);
+        if (index != -1) {
+            head = xml.substring(0, index) + "<sheetData>";
+            tail = SHEET_DATA_END + xml.substring(index + EMPTY_SHEET_DATA.length());
+        } else {
+            index = xml.indexOf(SHEET_DATA_END);
+            if (index == -1) {
+                throw new IOException("Sheet data not found in " + name);
+            }
+            head = xml.substring(0, index);
+            tail = xml.substring(index);
+        }
+        return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(head.getBytes(StandardCharsets.UTF_8)),
+                rows,
+                new ByteArrayInputStream(tail.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    @FunctionalInterface
+    private static interface EntryWriter {
+
+        void putEntry(String name, InputStream data) throws IOException;
+    }
+}
@@ -4,8 +4,13 @@ import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
@@ -19,10 +24,17 @@ import javafx.stage.Stage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import ru.kamikadze_zm.raoreportgenerator.ExcelException;
+import ru.kamikadze_zm.raoreportgenerator.ExcelExecutor;
 import ru.kamikadze_zm.raoreportgenerator.MainApp;
 import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+import ru.kamikadze_zm.raoreportgenerator.kinopoisk.AdaptivePacing;
 import ru.kamikadze_zm.raoreportgenerator.kinopoisk.Browser;
+import ru.kamikadze_zm.raoreportgenerator.kinopoisk.CrawlStats;
+import ru.kamikadze_zm.raoreportgenerator.kinopoisk.HttpPageLoader;
 import ru.kamikadze_zm.raoreportgenerator.kinopoisk.KinopoiskParser;
+import ru.kamikadze_zm.raoreportgenerator.kinopoisk.MovieQueue;
+import ru.kamikadze_zm.raoreportgenerator.kinopoisk.PageLoader;
+import ru.kamikadze_zm.raoreportgenerator.kinopoisk.RateLimiter;
 import ru.kamikadze_zm.raoreportgenerator.kinopoisk.TempUtil;
 import ru.kamikadze_zm.raoreportgenerator.playreports.ExcelPlayReports;
 import ru.kamikadze_zm.raoreportgenerator.playreports.PlayReportMovie;
@@ -43,15 +55,25 @@ public class ProcessController implements Initializable {
     private boolean playreports;
     private boolean playReportsComplete;
     private boolean combine;
-    private boolean combineComplete;
+    private volatile boolean combineComplete;
 
     private int countFilms = 0;
 
-    private int lastFilmIndex = 0;
+    private MovieQueue kinopoiskQueue;
+    private RateLimiter kinopoiskLimiter;
+    private int kinopoiskSessions = 0;
+    private CrawlStats kinopoiskStats;
 
-    private final List<String> errors = new ArrayList<>();
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    //записи файлов и объединения, которые должны завершиться до выхода
+    private final List<CompletableFuture<Void>> pendingTasks = Collections.synchronizedList(new ArrayList<>());
+
+    private boolean finished;
 
     private List<MovieInfo> kinopoiskMovies;
+    //фильмы в порядке СТП сетки, ожидающие плей репортов для порядка поиска по числу выходов
+    private List<MovieInfo> kinopoiskGridOrder;
     private List<PlayReportMovie> playReportMovies;
 
     private List<MovieInfo> restoredFilms;
@@ -67,6 +89,8 @@ public class ProcessController implements Initializable {
     private Label lblCount;
     @FXML
     private CheckBox cbPlayReports;
+    @FXML
+    private Label lblPacing;
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
@@ -85,24 +109,25 @@ public class ProcessController implements Initializable {
         }
 
         if (moviesInfo) {
-            File stpGrid = showFileChooser("Выберите сетку СТП");
+            List<File> stpGrids = showMultipleFileChooser("Выберите сетки СТП");
 
-            if (stpGrid == null) {
+            if (stpGrids == null || stpGrids.isEmpty()) {
                 MainApp.showErrorAndExit("Файл не выбран");
+                return;
             }
 
-            StpGridParser sgp;
+            Set<MovieInfo> stpMovies;
             try {
-                sgp = new StpGridParser(stpGrid);
+                stpMovies = StpGridParser.parse(stpGrids);
                 LOG.info("Parse stp grid complete");
-                this.countFilms = sgp.getMovies().size();
+                this.countFilms = stpMovies.size();
                 lblCount.setText(String.valueOf(this.countFilms));
             } catch (ExcelException e) {
                 MainApp.showErrorAndExit(e.getMessage());
                 return;
             }
 
-            kinopoiskMovies = new ArrayList<>(sgp.getMovies());
+            kinopoiskMovies = new ArrayList<>(stpMovies);
             Collections.sort(kinopoiskMovies);
 
             if (restore) {
@@ -111,7 +136,14 @@ public class ProcessController implements Initializable {
                 TempUtil.deleteTemp();
             }
 
-            processKinopoiskPart();
+            if (!MainApp.SETTINGS.isKinopoiskAiringOrder()) {
+                startKinopoisk(kinopoiskMovies);
+            } else if (!playreports) {
+                startKinopoisk(new ArrayList<>(stpMovies));
+            } else {
+                //поиск начнется, когда будут разобраны плей репорты
+                kinopoiskGridOrder = new ArrayList<>(stpMovies);
+            }
         }
 
         if (playreports) {
@@ -149,14 +181,38 @@ public class ProcessController implements Initializable {
         }
 
         if (!moviesInfo && !playreports && combine) {
-            combine();
+            finishWhenDone(combine());
+        }
+    }
+
+    /**
+     * Запускает сессии кинопоиска, которые берут фильмы из общей очереди
+     * и соблюдают общее ограничение частоты запросов
+     *
+     * @param order фильмы в порядке поиска
+     */
+    private void startKinopoisk(List<MovieInfo> order) {
+        kinopoiskQueue = new MovieQueue(order);
+        AdaptivePacing pacing = new AdaptivePacing(
+                TimeUnit.SECONDS.toMillis(MainApp.SETTINGS.getKinopoiskMinDelay()),
+                TimeUnit.SECONDS.toMillis(MainApp.SETTINGS.getKinopoiskMaxDelay()));
+        kinopoiskLimiter = new RateLimiter(MainApp.SETTINGS.getKinopoiskRequestsPerMinute(), MainApp.SETTINGS.getKinopoiskBurst(), pacing);
+        kinopoiskStats = new CrawlStats();
+        kinopoiskStats.startLogging();
+        int sessions = MainApp.SETTINGS.getKinopoiskSessions();
+        LOG.info("Kinopoisk sessions: {}", sessions);
+        for (int i = 0; i < sessions && !kinopoiskQueue.isEmpty(); i++) {
+            processKinopoiskPart();
+        }
+        if (kinopoiskSessions == 0) {
+            completeKinopoisk();
         }
     }
 
     private void processKinopoiskPart() {
-        List<MovieInfo> kinopoiskMoviesPart = getNextKinopoiskMoviesPart();
-        Browser browser = new Browser();
-        KinopoiskParser kp = new KinopoiskParser(kinopoiskMoviesPart, browser, restoredFilms);
+        kinopoiskSessions++;
+        PageLoader loader = MainApp.SETTINGS.isKinopoiskHttp() ? new HttpPageLoader() : new Browser();
+        KinopoiskParser kp = new KinopoiskParser(kinopoiskQueue, NUMBER_FILMS_AT_A_TIME, loader, kinopoiskLimiter, kinopoiskStats, restoredFilms);
         kp.progressProperty().addListener((obs, ov, nv) -> updateProcessed(nv.intValue() - ov.intValue()));
 
         kp.completedProperty().addListener((obs, ov, nv) -> {
@@ -168,34 +224,32 @@ public class ProcessController implements Initializable {
         kp.parse();
     }
 
-    private List<MovieInfo> getNextKinopoiskMoviesPart() {
-        int next = lastFilmIndex + NUMBER_FILMS_AT_A_TIME;
-        if (next > kinopoiskMovies.size()) {
-            next = kinopoiskMovies.size();
-        }
-        List<MovieInfo> part = kinopoiskMovies.subList(lastFilmIndex, next);
-        lastFilmIndex = next;
-        return part;
-    }
-
     private void completeKinopoiskPart() {
-        if (lastFilmIndex >= kinopoiskMovies.size()) {
-            completeKinopoisk();
-        } else {
+        kinopoiskSessions--;
+        if (!kinopoiskQueue.isEmpty()) {
             processKinopoiskPart();
+        } else if (kinopoiskSessions == 0) {
+            completeKinopoisk();
         }
     }
 
     private void updateProcessed(int value) {
         processed += value;
         Platform.runLater(() -> lblProcessed.setText(String.valueOf(processed)));
+        if (kinopoiskLimiter != null) {
+            AdaptivePacing pacing = kinopoiskLimiter.getPacing();
+            String text = String.format("Задержка между запросами: %.1f с, капча: %.0f%%",
+                    pacing.getDelayMs() / 1000.0, pacing.getCaptchaRate() * 100);
+            Platform.runLater(() -> lblPacing.setText(text));
+        }
     }
 
     private void completeKinopoisk() {
         this.moviesInfoComplete = true;
+        LOG.info("Kinopoisk complete, pages skipped: {}", kinopoiskStats.getSkippedPages());
+        kinopoiskStats.stopLogging();
         saveKinopoiskResults(kinopoiskMovies);
-        combine();
-        finish();
+        finishWhenDone(combine());
     }
 
     private void completePlayReports(List<PlayReportMovie> playReportMovies) {
@@ -203,8 +257,23 @@ public class ProcessController implements Initializable {
         savePlayReportsToExcel(playReportMovies);
         cbPlayReports.setSelected(true);
         this.playReportMovies = playReportMovies;
-        combine();
-        finish();
+        if (kinopoiskGridOrder != null) {
+            startKinopoisk(orderByAirings(kinopoiskGridOrder, playReportMovies));
+            kinopoiskGridOrder = null;
+        }
+        finishWhenDone(combine());
+    }
+
+    /**
+     * Фильмы, которые чаще выходили в эфир, ищутся первыми, чтобы прерванный поиск покрыл
+     * большую часть выходов рао отчета. При равном числе выходов сохраняется порядок СТП сетки
+     */
+    private List<MovieInfo> orderByAirings(List<MovieInfo> gridOrder, List<PlayReportMovie> playReportMovies) {
+        Map<MovieInfo, Integer> airings = Combiner.countAirings(gridOrder, playReportMovies);
+        List<MovieInfo> order = new ArrayList<>(gridOrder);
+        order.sort(Comparator.comparingInt((MovieInfo m) -> airings.getOrDefault(m, 0)).reversed());
+        LOG.info("Kinopoisk order by airings, movies in play reports: {} of {}", airings.size(), order.size());
+        return order;
     }
 
     private void checkDataForCombine() {
@@ -229,45 +298,69 @@ public class ProcessController implements Initializable {
         }
     }
 
+    private List<File> showMultipleFileChooser(String title) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(title);
+        fileChooser.setInitialDirectory(getInputDir());
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("XLSX", "*.xlsx"));
+        return fileChooser.showOpenMultipleDialog(stage);
+    }
+
     private File showFileChooser(String title) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle(title);
         fileChooser.setInitialDirectory(getInputDir());
         FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter("XLSX", "*.xlsx");
         fileChooser.getExtensionFilters().add(extFilter);
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV, TSV", "*.csv", "*.tsv"));
+        if (MainApp.SETTINGS.getExportFormat().isDelimited()) {
+            fileChooser.setSelectedExtensionFilter(fileChooser.getExtensionFilters().get(1));
+        }
         return fileChooser.showOpenDialog(stage);
     }
 
-    private void combine() {
+    /**
+     * Запускает объединение на потоке ввода-вывода, если готовы все нужные данные
+     *
+     * @return задача объединения (завершается без ошибок, ошибка объединения завершает приложение)
+     */
+    private CompletableFuture<Void> combine() {
         if (!combine) {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        try {
-            if (moviesInfo && playreports) {
-                if (moviesInfoComplete && playReportsComplete) {
-                    Combiner.combine(kinopoiskMovies, playReportMovies);
-                    combineComplete();
-                }
-            } else if (moviesInfo) {
-                if (moviesInfoComplete) {
-                    Combiner.combineFilms(kinopoiskMovies, playReportMoviesFile);
-                    combineComplete();
-                }
-            } else if (playreports) {
-                if (playReportsComplete) {
-                    Combiner.combinePlayReports(kinopoiskMoviesFile, playReportMovies);
-                    combineComplete();
-                }
+        CompletableFuture<Void> combineTask;
+        if (moviesInfo && playreports) {
+            if (!moviesInfoComplete || !playReportsComplete) {
+                return CompletableFuture.completedFuture(null);
+            }
+            List<MovieInfo> movies = kinopoiskMovies;
+            List<PlayReportMovie> reports = playReportMovies;
+            combineTask = ExcelExecutor.run(() -> Combiner.combine(movies, reports));
+        } else if (moviesInfo) {
+            if (!moviesInfoComplete) {
+                return CompletableFuture.completedFuture(null);
+            }
+            List<MovieInfo> movies = kinopoiskMovies;
+            combineTask = ExcelExecutor.run(() -> Combiner.combineFilms(movies, playReportMoviesFile));
+        } else if (playreports) {
+            if (!playReportsComplete) {
+                return CompletableFuture.completedFuture(null);
+            }
+            List<PlayReportMovie> reports = playReportMovies;
+            combineTask = ExcelExecutor.run(() -> Combiner.combinePlayReports(kinopoiskMoviesFile, reports));
+        } else {
+            combineTask = ExcelExecutor.run(() -> Combiner.combine(kinopoiskMoviesFile, playReportMoviesFile));
+        }
+        return combineTask.handle((v, t) -> {
+            if (t != null) {
+                String message = ExcelExecutor.toExcelException(t).getMessage();
+                Platform.runLater(() -> MainApp.showErrorAndExit(message));
             } else {
-                Combiner.combine(kinopoiskMoviesFile, playReportMoviesFile);
                 combineComplete();
-                finish();
             }
-        } catch (ExcelException e) {
-            MainApp.showErrorAndExit(e.getMessage());
-        }
-
+            return null;
+        });
     }
 
     private void combineComplete() {
@@ -275,19 +368,40 @@ public class ProcessController implements Initializable {
     }
 
     private void saveKinopoiskResults(List<MovieInfo> moviesInfo) {
-        try {
-            MoviesInfoExcel.save(moviesInfo, MainApp.SETTINGS.getMoviesInfoPath(), true);
-        } catch (ExcelException e) {
-            showError(e.getMessage());
-        }
+        write(() -> MoviesInfoExcel.save(moviesInfo, MainApp.SETTINGS.getMoviesInfoPath(), true));
     }
 
     private void savePlayReportsToExcel(List<PlayReportMovie> playReportMovies) {
-        try {
-            ExcelPlayReports.save(playReportMovies);
-        } catch (ExcelException e) {
-            showError(e.getMessage());
+        write(() -> ExcelPlayReports.save(playReportMovies));
+    }
+
+    /**
+     * Запускает запись файла на потоке ввода-вывода, ошибка записи показывается по завершении
+     */
+    private void write(ExcelExecutor.ExcelRunnable writeTask) {
+        pendingTasks.add(ExcelExecutor.run(writeTask).handle((v, t) -> {
+            if (t != null) {
+                errors.add(ExcelExecutor.toExcelException(t).getMessage());
+            }
+            return null;
+        }));
+    }
+
+    private void finishWhenDone(CompletableFuture<Void> combineTask) {
+        pendingTasks.add(combineTask);
+        finishWhenPendingDone();
+    }
+
+    /**
+     * Вызывает {@link #finish()} на потоке JavaFX, когда завершатся все записи и объединения,
+     * запущенные к этому моменту
+     */
+    private void finishWhenPendingDone() {
+        CompletableFuture<?>[] pending;
+        synchronized (pendingTasks) {
+            pending = pendingTasks.toArray(new CompletableFuture<?>[pendingTasks.size()]);
         }
+        CompletableFuture.allOf(pending).thenRun(() -> Platform.runLater(() -> finish()));
     }
 
     private void showError(String message) {
@@ -295,12 +409,33 @@ public class ProcessController implements Initializable {
     }
 
     private void finish() {
+        if (finished) {
+            return;
+        }
         if (moviesInfoIsCompleted() && playreportsIsCompleted() && combineIsCompleted()) {
+            boolean pending;
+            synchronized (pendingTasks) {
+                pending = pendingTasks.stream().anyMatch(t -> !t.isDone());
+            }
+            if (pending) {
+                //запись, начатая после регистрации этого вызова, еще не завершена
+                finishWhenPendingDone();
+                return;
+            }
+            finished = true;
             if (moviesInfo) {
                 TempUtil.deleteTemp();
             }
-            MainApp.showMessage("Выполнение завершено", "Выполнение завершено", Alert.AlertType.INFORMATION);
-            errors.stream().forEach(e -> showError(e));
+            String message = "Выполнение завершено";
+            if (moviesInfo && kinopoiskStats != null) {
+                message += "\nНе загружено лишних страниц кинопоиска: " + kinopoiskStats.getSkippedPages();
+            }
+            MainApp.showMessage("Выполнение завершено", message, Alert.AlertType.INFORMATION);
+            List<String> messages;
+            synchronized (errors) {
+                messages = new ArrayList<>(errors);
+            }
+            messages.forEach(e -> showError(e));
             MainApp.exit(0);
         }
     }
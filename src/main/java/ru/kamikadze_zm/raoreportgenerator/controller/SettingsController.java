@@ -13,6 +13,8 @@ import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
@@ -21,6 +23,7 @@ import javafx.scene.layout.GridPane;
 import javafx.stage.Stage;
 import javafx.util.Pair;
 import ru.kamikadze_zm.raoreportgenerator.MainApp;
+import ru.kamikadze_zm.raoreportgenerator.settings.ExportFormat;
 import ru.kamikadze_zm.raoreportgenerator.settings.ServerSettings;
 import ru.kamikadze_zm.raoreportgenerator.settings.Settings;
 import ru.kamikadze_zm.raoreportgenerator.settings.StpSettings;
@@ -68,6 +71,46 @@ public class SettingsController implements Initializable {
     @FXML
     private TextField secretKey;
 
+    //combine settings
+    @FXML
+    private TextField fuzzyMatchThreshold;
+    @FXML
+    private CheckBox cbRaoDelta;
+    @FXML
+    private TextField raoBaselinePath;
+    @FXML
+    private CheckBox cbRaoCompact;
+    @FXML
+    private ComboBox<ExportFormat> exportFormat;
+    @FXML
+    private TextField compressionLevel;
+    @FXML
+    private CheckBox cbParallelCompression;
+
+    //kinopoisk settings
+    @FXML
+    private CheckBox cbKinopoiskHttp;
+    @FXML
+    private TextField kinopoiskCacheDays;
+    @FXML
+    private TextField kinopoiskNegativeCacheDays;
+    @FXML
+    private TextField kinopoiskSessions;
+    @FXML
+    private TextField kinopoiskRequestsPerMinute;
+    @FXML
+    private TextField kinopoiskBurst;
+    @FXML
+    private TextField kinopoiskMinDelay;
+    @FXML
+    private TextField kinopoiskMaxDelay;
+    @FXML
+    private CheckBox cbKinopoiskStudios;
+    @FXML
+    private TextField kinopoiskReplayDir;
+    @FXML
+    private CheckBox cbKinopoiskAiringOrder;
+
     private final ObservableList<String> exclusions = FXCollections.observableArrayList();
 
     private Settings s;
@@ -109,6 +152,27 @@ public class SettingsController implements Initializable {
         ServerSettings server = s.getServerSettings();
         serverPath.setText(server.getServerPath());
         secretKey.setText(server.getSecretKey());
+
+        fuzzyMatchThreshold.setText(String.valueOf(s.getFuzzyMatchThreshold()));
+        cbRaoDelta.setSelected(s.isRaoDelta());
+        raoBaselinePath.setText(s.getRaoBaselinePath());
+        cbRaoCompact.setSelected(s.isRaoCompact());
+        exportFormat.getItems().setAll(ExportFormat.values());
+        exportFormat.setValue(s.getExportFormat());
+        compressionLevel.setText(String.valueOf(s.getCompressionLevel()));
+        cbParallelCompression.setSelected(s.isParallelCompression());
+
+        cbKinopoiskHttp.setSelected(s.isKinopoiskHttp());
+        kinopoiskCacheDays.setText(String.valueOf(s.getKinopoiskCacheDays()));
+        kinopoiskNegativeCacheDays.setText(String.valueOf(s.getKinopoiskNegativeCacheDays()));
+        kinopoiskSessions.setText(String.valueOf(s.getKinopoiskSessions()));
+        kinopoiskRequestsPerMinute.setText(String.valueOf(s.getKinopoiskRequestsPerMinute()));
+        kinopoiskBurst.setText(String.valueOf(s.getKinopoiskBurst()));
+        kinopoiskMinDelay.setText(String.valueOf(s.getKinopoiskMinDelay()));
+        kinopoiskMaxDelay.setText(String.valueOf(s.getKinopoiskMaxDelay()));
+        cbKinopoiskStudios.setSelected(s.isKinopoiskStudios());
+        kinopoiskReplayDir.setText(s.getKinopoiskReplayDir());
+        cbKinopoiskAiringOrder.setSelected(s.isKinopoiskAiringOrder());
     }
 
     @FXML
@@ -190,6 +254,26 @@ public class SettingsController implements Initializable {
 
         ServerSettings serverSettings = new ServerSettings(serverPath.getText().trim(), secretKey.getText().trim());
         s.setServerSettings(serverSettings);
+
+        s.setFuzzyMatchThreshold(Integer.parseInt(fuzzyMatchThreshold.getText().trim()));
+        s.setRaoDelta(cbRaoDelta.isSelected());
+        s.setRaoBaselinePath(raoBaselinePath.getText().trim());
+        s.setRaoCompact(cbRaoCompact.isSelected());
+        s.setExportFormat(exportFormat.getValue());
+        s.setCompressionLevel(Integer.parseInt(compressionLevel.getText().trim()));
+        s.setParallelCompression(cbParallelCompression.isSelected());
+
+        s.setKinopoiskHttp(cbKinopoiskHttp.isSelected());
+        s.setKinopoiskCacheDays(Integer.parseInt(kinopoiskCacheDays.getText().trim()));
+        s.setKinopoiskNegativeCacheDays(Integer.parseInt(kinopoiskNegativeCacheDays.getText().trim()));
+        s.setKinopoiskSessions(Integer.parseInt(kinopoiskSessions.getText().trim()));
+        s.setKinopoiskRequestsPerMinute(Integer.parseInt(kinopoiskRequestsPerMinute.getText().trim()));
+        s.setKinopoiskBurst(Integer.parseInt(kinopoiskBurst.getText().trim()));
+        s.setKinopoiskMinDelay(Integer.parseInt(kinopoiskMinDelay.getText().trim()));
+        s.setKinopoiskMaxDelay(Integer.parseInt(kinopoiskMaxDelay.getText().trim()));
+        s.setKinopoiskStudios(cbKinopoiskStudios.isSelected());
+        s.setKinopoiskReplayDir(kinopoiskReplayDir.getText().trim());
+        s.setKinopoiskAiringOrder(cbKinopoiskAiringOrder.isSelected());
         
         MainApp.showWriteAccessMessages();
 
@@ -0,0 +1,93 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Подстройка задержки между запросами к кинопоиску по ответам сайта (AIMD):
+ * пока страницы загружаются без капчи, задержка уменьшается на постоянный шаг,
+ * при капче или ошибке загрузки - увеличивается вдвое. Задержка не выходит за заданные границы
+ */
+public class AdaptivePacing {
+
+    private static final Logger LOG = LogManager.getLogger(AdaptivePacing.class);
+
+    private static final long DECREASE_STEP_MS = 1000;
+    private static final double INCREASE_FACTOR = 2;
+    private static final long INITIAL_DELAY_MS = 20000;
+    private static final int WINDOW = 50;
+
+    private final long minDelayMs;
+    private final long maxDelayMs;
+
+    private long delayMs;
+
+    //последние загрузки, true - капча
+    private final boolean[] captchas = new boolean[WINDOW];
+    private int count;
+    private int captchaCount;
+
+    /**
+     *
+     * @param minDelayMs минимальная задержка между запросами, мс
+     * @param maxDelayMs максимальная задержка между запросами, мс
+     */
+    public AdaptivePacing(long minDelayMs, long maxDelayMs) {
+        this.minDelayMs = Math.max(0, minDelayMs);
+        this.maxDelayMs = Math.max(this.minDelayMs, maxDelayMs);
+        this.delayMs = clamp(INITIAL_DELAY_MS);
+    }
+
+    /**
+     *
+     * @return текущая задержка между запросами, мс
+     */
+    public synchronized long getDelayMs() {
+        return delayMs;
+    }
+
+    /**
+     *
+     * @return доля страниц с капчей среди последних загрузок, от 0 до 1
+     */
+    public synchronized double getCaptchaRate() {
+        int size = Math.min(count, WINDOW);
+        return size == 0 ? 0 : (double) captchaCount / size;
+    }
+
+    public synchronized void onSuccess() {
+        record(false);
+        delayMs = clamp(delayMs - DECREASE_STEP_MS);
+    }
+
+    public synchronized void onCaptcha() {
+        record(true);
+        backOff("captcha");
+    }
+
+    public synchronized void onError() {
+        record(false);
+        backOff("error");
+    }
+
+    private void backOff(String reason) {
+        delayMs = clamp((long) (Math.max(delayMs, DECREASE_STEP_MS) * INCREASE_FACTOR));
+        LOG.info("Pacing back off ({}): delay = {} ms, captcha rate = {}", reason, delayMs, getCaptchaRate());
+    }
+
+    private void record(boolean captcha) {
+        int i = count % WINDOW;
+        if (count >= WINDOW && captchas[i]) {
+            captchaCount--;
+        }
+        captchas[i] = captcha;
+        if (captcha) {
+            captchaCount++;
+        }
+        count++;
+    }
+
+    private long clamp(long value) {
+        return Math.max(minDelayMs, Math.min(maxDelayMs, value));
+    }
+}
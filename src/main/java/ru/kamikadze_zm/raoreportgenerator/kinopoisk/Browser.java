@@ -1,36 +1,48 @@
 package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.StringWriter;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.beans.value.ObservableValue;
 import javafx.concurrent.Worker;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.w3c.dom.Document;
 
-public class Browser {
+/**
+ * Загрузка страниц встроенным браузером (WebView). Обработчик вызывается в потоке JavaFX
+ */
+public class Browser implements PageLoader {
 
     private static final Logger LOG = LogManager.getLogger(Browser.class);
-    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/85.0.4183.102 Safari/537.36";
+    static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/85.0.4183.102 Safari/537.36";
     //private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/67.0.3396.99 Safari/537.36";
     //private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 6.1) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/59.0.3071.115 Safari/537.36";
     //private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; rv:54.0) Gecko/20100101 Firefox/54.0";
 
-    private static WebEngine webEngine;
+    private final WebEngine webEngine;
 
     private final ReadOnlyBooleanWrapper completedProperty = new ReadOnlyBooleanWrapper(true);
 
     private volatile boolean isCompleted = false;
 
-    private Document document;
+    private Consumer<Page> onLoaded;
+    private Transformer serializer;
 
     private String currentUrl;
     private int attemptCounter;
-    private Timer cancellationTimer;
+    private volatile int cancellations;
+    private ScheduledFuture<?> cancellationTask;
 
     public Browser() {
         WebView browser = new WebView();
@@ -42,20 +54,20 @@ public class Browser {
 
                     switch (newValue) {
                         case SUCCEEDED:
-                            document = webEngine.getDocument();
                             LOG.info("Page loaded");
-                            setCompleted(true);
+                            setCompleted(true, toPage(webEngine.getDocument()));
                             break;
                         case FAILED:
                             LOG.info("Page load failed");
-                            setCompleted(true);
+                            setCompleted(true, null);
                             break;
                         case CANCELLED:
                             LOG.info("Page load cancelled");
+                            cancellations++;
                             if (attemptCounter < 5) {
                                 reloadPage();
                             } else {
-                                setCompleted(true);
+                                setCompleted(true, null);
                             }
                             break;
                         default:
@@ -64,18 +76,32 @@ public class Browser {
                 });
     }
 
+    @Override
+    public void setOnLoaded(Consumer<Page> onLoaded) {
+        this.onLoaded = onLoaded;
+    }
+
+    @Override
     public void loadPage(String url) throws ParseKinopoiskException {
+        Platform.runLater(() -> startLoad(url));
+    }
+
+    private void startLoad(String url) throws ParseKinopoiskException {
         if (!getCompleted()) {
             throw new ParseKinopoiskException("Не загружена предыдущая страница");
         }
-        setCompleted(false);
-        document = null;
+        setCompleted(false, null);
         currentUrl = url;
         attemptCounter = 0;
         LOG.info("Page load - {}", url);
         load(url);
     }
 
+    @Override
+    public int getCancellations() {
+        return cancellations;
+    }
+
     public boolean getCompleted() {
         return completedProperty().get();
     }
@@ -84,14 +110,49 @@ public class Browser {
         return completedProperty;
     }
 
-    public Document getDocument() {
-        return document;
-    }
-
-    private void setCompleted(boolean value) {
+    private void setCompleted(boolean value, Page page) {
         cancelCancellationTimer();
         isCompleted = value;
-        Platform.runLater(() -> completedProperty.set(value));
+        Platform.runLater(() -> {
+            completedProperty.set(value);
+            if (value && onLoaded != null) {
+                onLoaded.accept(page);
+            }
+        });
+    }
+
+    private Page toPage(Document d) {
+        if (d == null) {
+            return null;
+        }
+        try {
+            return new Page(d.getDocumentURI(), documentToString(d));
+        } catch (ParseKinopoiskException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Сериализатор создается один раз на браузер (используется только в потоке JavaFX), без отступов:
+     * отступы почти вдвое увеличивают html и время его разбора
+     */
+    private String documentToString(Document doc) throws ParseKinopoiskException {
+        try {
+            if (serializer == null) {
+                serializer = TransformerFactory.newInstance().newTransformer();
+                serializer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+                serializer.setOutputProperty(OutputKeys.METHOD, "html");
+                serializer.setOutputProperty(OutputKeys.INDENT, "no");
+                serializer.setOutputProperty(OutputKeys.ENCODING, KinopoiskParser.ENCODING);
+            }
+            StringWriter sw = new StringWriter();
+            serializer.transform(new DOMSource(doc), new StreamResult(sw));
+            return sw.toString();
+        } catch (TransformerException e) {
+            LOG.warn("TransformerException: ", e);
+            throw new ParseKinopoiskException("TransformerException");
+
+        }
     }
 
     private void load(String url) {
@@ -109,19 +170,20 @@ public class Browser {
     }
 
     private void startCancellationTimer() {
-        cancellationTimer = new Timer(true);
-        cancellationTimer.schedule(new CancellationTask(webEngine.getLoadWorker()), 120000);
+        //при перезагрузке страницы задача от предыдущей попытки заменяется новой
+        cancelCancellationTimer();
+        cancellationTask = KinopoiskExecutor.schedule(new CancellationTask(webEngine.getLoadWorker()), 120000);
         LOG.info("Cancellation timer started");
     }
 
     private void cancelCancellationTimer() {
-        if (cancellationTimer != null) {
-            cancellationTimer.cancel();
+        if (cancellationTask != null) {
+            cancellationTask.cancel(false);
             LOG.info("Cancellation timer cancelled");
         }
     }
 
-    private class CancellationTask extends TimerTask {
+    private class CancellationTask implements Runnable {
 
         private final Worker worker;
 
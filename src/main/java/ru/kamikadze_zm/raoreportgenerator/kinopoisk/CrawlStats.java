@@ -0,0 +1,202 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Общая для всех сессий статистика загрузки кинопоиска: гистограммы времени ожидания перед запросом,
+ * загрузки и разбора страницы для каждого этапа (поиск, фильм, киностудии, съемочная группа)
+ * и счетчики капчи, ошибок, повторов, отмен загрузки и попаданий в кэш.
+ * Сводка периодически пишется в отдельный лог (logger kinopoisk-stats)
+ */
+public class CrawlStats {
+
+    private static final Logger STATS_LOG = LogManager.getLogger("kinopoisk-stats");
+
+    private static final long SUMMARY_PERIOD_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<KinopoiskParser.Status, StageStats> stages = new EnumMap<>(KinopoiskParser.Status.class);
+    private final long startedAt = System.nanoTime();
+
+    private int films;
+    private int cacheHits;
+    private int restored;
+    private int captchas;
+    private int errors;
+    private int retries;
+    private int cancellations;
+    private int skippedPages;
+
+    private ScheduledFuture<?> summaryTask;
+
+    public CrawlStats() {
+        for (KinopoiskParser.Status s : KinopoiskParser.Status.values()) {
+            if (s != KinopoiskParser.Status.NEXT) {
+                stages.put(s, new StageStats());
+            }
+        }
+    }
+
+    /**
+     * Запускает периодическую запись сводки в лог статистики
+     */
+    public synchronized void startLogging() {
+        if (summaryTask == null) {
+            summaryTask = KinopoiskExecutor.scheduleAtFixedRate(() -> STATS_LOG.info(getSummary()), SUMMARY_PERIOD_MS);
+        }
+    }
+
+    /**
+     * Останавливает периодическую запись и пишет итоговую сводку
+     */
+    public synchronized void stopLogging() {
+        if (summaryTask != null) {
+            summaryTask.cancel(false);
+            summaryTask = null;
+        }
+        STATS_LOG.info("Final. {}", getSummary());
+    }
+
+    synchronized void recordWait(KinopoiskParser.Status stage, long nanos) {
+        stage(stage).waiting.record(nanos);
+    }
+
+    synchronized void recordLoad(KinopoiskParser.Status stage, long nanos) {
+        stage(stage).loading.record(nanos);
+    }
+
+    synchronized void recordExtract(KinopoiskParser.Status stage, long nanos) {
+        stage(stage).extracting.record(nanos);
+    }
+
+    synchronized void film() {
+        films++;
+    }
+
+    synchronized void cacheHit() {
+        cacheHits++;
+    }
+
+    synchronized void restored() {
+        restored++;
+    }
+
+    synchronized void captcha() {
+        captchas++;
+    }
+
+    synchronized void error() {
+        errors++;
+    }
+
+    synchronized void retry() {
+        retries++;
+    }
+
+    synchronized void addCancellations(int count) {
+        cancellations += count;
+    }
+
+    synchronized void skippedPage() {
+        skippedPages++;
+    }
+
+    public synchronized int getSkippedPages() {
+        return skippedPages;
+    }
+
+    /**
+     *
+     * @return сводка: счетчики и для каждого этапа медиана, 90-й процентиль, среднее и максимум времени, мс
+     */
+    public synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT,
+                "Kinopoisk crawl %d s: films %d, cache hits %d, restored %d, captchas %d, errors %d, retries %d, cancellations %d, skipped pages %d",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt),
+                films, cacheHits, restored, captchas, errors, retries, cancellations, skippedPages));
+        for (Map.Entry<KinopoiskParser.Status, StageStats> e : stages.entrySet()) {
+            StageStats s = e.getValue();
+            if (s.loading.count == 0 && s.waiting.count == 0) {
+                continue;
+            }
+            sb.append(System.lineSeparator()).append(String.format(Locale.ROOT, "  %-6s pages %d; wait %s; load %s; extract %s",
+                    e.getKey(), s.loading.count, s.waiting, s.loading, s.extracting));
+        }
+        return sb.toString();
+    }
+
+    private StageStats stage(KinopoiskParser.Status stage) {
+        StageStats s = stages.get(stage);
+        if (s == null) {
+            throw new IllegalArgumentException("No stats for stage " + stage);
+        }
+        return s;
+    }
+
+    private static class StageStats {
+
+        private final Histogram waiting = new Histogram();
+        private final Histogram loading = new Histogram();
+        private final Histogram extracting = new Histogram();
+    }
+
+    /**
+     * Гистограмма времени в микросекундах с корзинами, растущими в √2 раз: процентили считаются
+     * по верхней границе корзины (погрешность до 41%), среднее и максимум - точно
+     */
+    static class Histogram {
+
+        private static final double STEP = Math.log(Math.sqrt(2));
+        //√2^80 мкс - больше 300 часов
+        private static final int BUCKETS = 81;
+
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long sumMicros;
+        private long maxMicros;
+
+        void record(long nanos) {
+            long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+            int i = Math.min(BUCKETS - 1, (int) Math.ceil(Math.log(micros) / STEP - 1e-9));
+            buckets[i]++;
+            count++;
+            sumMicros += micros;
+            maxMicros = Math.max(maxMicros, micros);
+        }
+
+        /**
+         *
+         * @param p доля от 0 до 1
+         * @return время, мс
+         */
+        double percentile(double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(maxMicros, Math.exp(i * STEP)) / 1000;
+                }
+            }
+            return maxMicros / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            if (count == 0) {
+                return "-";
+            }
+            return String.format(Locale.ROOT, "p50 %.1f p90 %.1f avg %.1f max %.1f ms",
+                    percentile(0.5), percentile(0.9), sumMicros / 1000.0 / count, maxMicros / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+
+/**
+ * Правило извлечения данных со страницы кинопоиска: путь из шагов с заранее разобранными селекторами
+ * и обработка найденных значений. Шаг применяется к каждому элементу, найденному предыдущим шагом.
+ * Если на каком-то шаге ничего не найдено, результат пустой
+ */
+public class ExtractionRule {
+
+    private final String name;
+    private final List<Step> path;
+    private final String attr;
+    private final Pattern pattern;
+    private final String join;
+
+    ExtractionRule(String name, List<Step> path, String attr, Pattern pattern, String join) {
+        this.name = name;
+        this.path = path;
+        this.attr = attr;
+        this.pattern = pattern;
+        this.join = join;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     *
+     * @param root документ или элемент, от которого начинается путь
+     * @return элементы, найденные последним шагом
+     */
+    public Elements elements(Element root) {
+        List<Element> current = Collections.singletonList(root);
+        for (Step s : path) {
+            List<Element> next = new ArrayList<>();
+            for (Element e : current) {
+                s.apply(e, next);
+            }
+            if (next.isEmpty()) {
+                return new Elements();
+            }
+            current = next;
+        }
+        return new Elements(current);
+    }
+
+    /**
+     *
+     * @return первый найденный элемент или {@code null}
+     */
+    public Element first(Element root) {
+        Elements els = elements(root);
+        return els.isEmpty() ? null : els.get(0);
+    }
+
+    /**
+     * Значение элемента - атрибут правила или текст элемента без пробелов по краям. Если задано регулярное выражение,
+     * берется первая группа (или все совпадение), элементы без совпадения пропускаются. Пустые значения пропускаются
+     *
+     * @return значения найденных элементов
+     */
+    public List<String> values(Element root) {
+        Elements els = elements(root);
+        List<String> values = new ArrayList<>(els.size());
+        for (Element e : els) {
+            String v = (attr != null ? e.attr(attr) : e.text()).trim();
+            if (pattern != null) {
+                Matcher m = pattern.matcher(v);
+                if (!m.find()) {
+                    continue;
+                }
+                v = (m.groupCount() > 0 ? m.group(1) : m.group()).trim();
+            }
+            if (!v.isEmpty()) {
+                values.add(v);
+            }
+        }
+        return values;
+    }
+
+    /**
+     *
+     * @return значения, объединенные через разделитель правила (без разделителя - первое значение),
+     * {@code null} - ничего не найдено
+     */
+    public String value(Element root) {
+        List<String> values = values(root);
+        if (values.isEmpty()) {
+            return null;
+        }
+        return join != null ? String.join(join, values) : values.get(0);
+    }
+
+    static enum StepType {
+        //элементы внутри текущего (включая его самого)
+        SELECT,
+        //следующие подряд соседние элементы, подходящие под селектор
+        SIBLINGS,
+        //текущий элемент, если подходит под селектор
+        IS;
+    }
+
+    static class Step {
+
+        private final StepType type;
+        private final Evaluator evaluator;
+        private final Integer index;
+        private final Integer from;
+        private final Integer to;
+
+        /**
+         *
+         * @param index номер найденного элемента (отрицательный - с конца), {@code null} - диапазон from-to
+         * @param from начало диапазона, {@code null} - с первого
+         * @param to конец диапазона, не включая (отрицательный - с конца), {@code null} - до последнего
+         */
+        Step(StepType type, Evaluator evaluator, Integer index, Integer from, Integer to) {
+            this.type = type;
+            this.evaluator = evaluator;
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+
+        private void apply(Element e, List<Element> out) {
+            switch (type) {
+                case SELECT:
+                    pick(Collector.collect(evaluator, e), out);
+                    break;
+                case SIBLINGS:
+                    List<Element> siblings = new ArrayList<>();
+                    for (Element s = e.nextElementSibling(); s != null && s.is(evaluator); s = s.nextElementSibling()) {
+                        siblings.add(s);
+                    }
+                    pick(siblings, out);
+                    break;
+                case IS:
+                    if (e.is(evaluator)) {
+                        out.add(e);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void pick(List<Element> found, List<Element> out) {
+            int size = found.size();
+            if (index != null) {
+                int i = index < 0 ? size + index : index;
+                if (i >= 0 && i < size) {
+                    out.add(found.get(i));
+                }
+                return;
+            }
+            int f = from == null ? 0 : Math.max(0, from < 0 ? size + from : from);
+            int t = to == null ? size : Math.min(size, to < 0 ? size + to : to);
+            if (f < t) {
+                out.addAll(found.subList(f, t));
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
+import ru.kamikadze_zm.raoreportgenerator.settings.Settings;
+
+/**
+ * Правила извлечения данных со страниц кинопоиска. Правила по умолчанию - в ресурсе приложения,
+ * файл в папке приложения заменяет правила с такими же именами, чтобы после изменения верстки сайта
+ * не нужно было собирать приложение заново. Файл перечитывается, если изменился
+ * (проверяется перед каждым фильмом), при ошибке в файле остаются прежние правила
+ */
+public class ExtractionRules {
+
+    private static final Logger LOG = LogManager.getLogger(ExtractionRules.class);
+
+    private static final String RESOURCE_PATH = "/kinopoisk-rules.json";
+    private static final String FILE_PATH = Settings.APP_DIR + "kinopoisk-rules.json";
+
+    private static final Map<String, ExtractionRule> DEFAULTS = loadDefaults();
+
+    private static ExtractionRules instance = new ExtractionRules(DEFAULTS, 0);
+
+    private final Map<String, ExtractionRule> rules;
+    //время изменения файла правил, 0 - файла нет
+    private final long fileModified;
+
+    private ExtractionRules(Map<String, ExtractionRule> rules, long fileModified) {
+        this.rules = rules;
+        this.fileModified = fileModified;
+    }
+
+    /**
+     *
+     * @return текущие правила, перечитываются из файла, если он изменился
+     */
+    public static synchronized ExtractionRules getInstance() {
+        File file = new File(FILE_PATH);
+        long modified = file.exists() ? file.lastModified() : 0;
+        if (modified != instance.fileModified) {
+            instance = reload(file, modified);
+        }
+        return instance;
+    }
+
+    /**
+     *
+     * @param name имя правила
+     * @return правило
+     * @throws ParseKinopoiskException если правила с таким именем нет
+     */
+    public ExtractionRule get(String name) throws ParseKinopoiskException {
+        ExtractionRule r = rules.get(name);
+        if (r == null) {
+            throw new ParseKinopoiskException("Нет правила извлечения: " + name);
+        }
+        return r;
+    }
+
+    private static ExtractionRules reload(File file, long modified) {
+        if (modified == 0) {
+            LOG.info("Kinopoisk rules file removed, default rules are used");
+            return new ExtractionRules(DEFAULTS, 0);
+        }
+        try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Map<String, ExtractionRule> rules = new HashMap<>(DEFAULTS);
+            Map<String, ExtractionRule> fromFile = compile(r);
+            rules.putAll(fromFile);
+            LOG.info("Kinopoisk rules loaded from {}: {}", file, fromFile.keySet());
+            return new ExtractionRules(rules, modified);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Cannot load kinopoisk rules from " + file + ", previous rules are used: ", e);
+            //файл не перечитывается, пока не изменится снова
+            return new ExtractionRules(instance.rules, modified);
+        }
+    }
+
+    private static Map<String, ExtractionRule> loadDefaults() {
+        InputStream in = ExtractionRules.class.getResourceAsStream(RESOURCE_PATH);
+        if (in == null) {
+            throw new IllegalStateException("Resource not found: " + RESOURCE_PATH);
+        }
+        try (Reader r = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return compile(r);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + RESOURCE_PATH, e);
+        }
+    }
+
+    /**
+     * Селекторы и регулярные выражения разбираются один раз при загрузке правил
+     *
+     * @throws IllegalArgumentException если правило задано неверно
+     */
+    private static Map<String, ExtractionRule> compile(Reader r) {
+        Map<String, RuleSpec> specs;
+        try {
+            specs = new Gson().fromJson(r, new TypeToken<Map<String, RuleSpec>>() {
+            }.getType());
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Invalid rules json", e);
+        }
+        Map<String, ExtractionRule> rules = new HashMap<>();
+        if (specs == null) {
+            return rules;
+        }
+        for (Map.Entry<String, RuleSpec> e : specs.entrySet()) {
+            rules.put(e.getKey(), compile(e.getKey(), e.getValue()));
+        }
+        return rules;
+    }
+
+    private static ExtractionRule compile(String name, RuleSpec spec) {
+        if (spec == null || spec.path == null || spec.path.isEmpty()) {
+            throw new IllegalArgumentException("Rule " + name + ": empty path");
+        }
+        List<ExtractionRule.Step> path = new ArrayList<>(spec.path.size());
+        for (StepSpec s : spec.path) {
+            ExtractionRule.StepType type;
+            String query;
+            if (s.select != null) {
+                type = ExtractionRule.StepType.SELECT;
+                query = s.select;
+            } else if (s.siblings != null) {
+                type = ExtractionRule.StepType.SIBLINGS;
+                query = s.siblings;
+            } else if (s.is != null) {
+                type = ExtractionRule.StepType.IS;
+                query = s.is;
+            } else {
+                throw new IllegalArgumentException("Rule " + name + ": step without select, siblings or is");
+            }
+            Evaluator evaluator;
+            try {
+                evaluator = QueryParser.parse(query);
+            } catch (Selector.SelectorParseException e) {
+                throw new IllegalArgumentException("Rule " + name + ": " + e.getMessage(), e);
+            }
+            path.add(new ExtractionRule.Step(type, evaluator, s.index, s.from, s.to));
+        }
+        Pattern pattern = null;
+        if (spec.pattern != null) {
+            try {
+                pattern = Pattern.compile(spec.pattern);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Rule " + name + ": " + e.getMessage(), e);
+            }
+        }
+        return new ExtractionRule(name, path, spec.attr, pattern, spec.join);
+    }
+
+    private static class RuleSpec {
+
+        private List<StepSpec> path;
+        private String attr;
+        private String pattern;
+        private String join;
+    }
+
+    private static class StepSpec {
+
+        private String select;
+        private String siblings;
+        private String is;
+        private Integer index;
+        private Integer from;
+        private Integer to;
+    }
+}
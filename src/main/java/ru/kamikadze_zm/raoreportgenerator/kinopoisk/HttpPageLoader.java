@@ -0,0 +1,186 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieManager;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Загрузка страниц обычными http запросами без встроенного браузера: без отрисовки и javascript,
+ * с постоянными соединениями и сжатием. Куки хранятся отдельно для каждого загрузчика.
+ * Обработчик вызывается в потоке загрузки
+ */
+public class HttpPageLoader implements PageLoader {
+
+    private static final Logger LOG = LogManager.getLogger(HttpPageLoader.class);
+
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 60000;
+    private static final int MAX_REDIRECTS = 10;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final Charset DEFAULT_CHARSET = Charset.forName("cp1251");
+
+    private final CookieManager cookies = new CookieManager();
+
+    private volatile boolean completed = true;
+    private volatile int cancellations;
+    private Consumer<Page> onLoaded;
+
+    @Override
+    public void setOnLoaded(Consumer<Page> onLoaded) {
+        this.onLoaded = onLoaded;
+    }
+
+    @Override
+    public void loadPage(String url) throws ParseKinopoiskException {
+        if (!completed) {
+            throw new ParseKinopoiskException("Не загружена предыдущая страница");
+        }
+        completed = false;
+        LOG.info("Page load - {}", url);
+        KinopoiskExecutor.execute(() -> {
+            Page page = null;
+            //обработчик вызывается при любой ошибке, иначе сессия не продолжится
+            try {
+                for (int attempt = 1; attempt <= MAX_ATTEMPTS && page == null; attempt++) {
+                    try {
+                        page = fetch(url);
+                        LOG.info("Page loaded");
+                    } catch (SocketTimeoutException e) {
+                        LOG.info("Page load timeout. Attempt number - {}, Url - {}", attempt, url);
+                        cancellations++;
+                    } catch (IOException | URISyntaxException e) {
+                        LOG.warn("Page load failed - " + url, e);
+                        break;
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Page load failed - " + url, e);
+            } finally {
+                completed = true;
+                onLoaded.accept(page);
+            }
+        });
+    }
+
+    @Override
+    public int getCancellations() {
+        return cancellations;
+    }
+
+    private Page fetch(String url) throws IOException, URISyntaxException {
+        String location = url;
+        for (int i = 0; i <= MAX_REDIRECTS; i++) {
+            URL u = new URL(location);
+            URI uri = u.toURI();
+            HttpURLConnection connection = (HttpURLConnection) u.openConnection();
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setRequestProperty("User-Agent", Browser.USER_AGENT);
+            connection.setRequestProperty("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+            connection.setRequestProperty("Accept-Language", "ru-RU,ru;q=0.9,en;q=0.8");
+            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            for (Map.Entry<String, List<String>> e : cookies.get(uri, Collections.emptyMap()).entrySet()) {
+                if (!e.getValue().isEmpty()) {
+                    connection.setRequestProperty(e.getKey(), String.join("; ", e.getValue()));
+                }
+            }
+
+            int code = connection.getResponseCode();
+            cookies.put(uri, connection.getHeaderFields());
+            byte[] body = readBody(connection, code);
+
+            if (code >= 300 && code < 400 && connection.getHeaderField("Location") != null) {
+                location = new URL(u, connection.getHeaderField("Location")).toString();
+                LOG.info("Redirect {} - {}", code, location);
+                continue;
+            }
+            if (code >= 400) {
+                throw new IOException("Http code " + code + ": " + location);
+            }
+            return new Page(location, decode(body, getCharset(connection.getContentType())));
+        }
+        throw new IOException("Too many redirects: " + url);
+    }
+
+    /**
+     * Тело ответа читается до конца и поток закрывается, чтобы соединение вернулось в пул постоянных соединений
+     */
+    private static byte[] readBody(HttpURLConnection connection, int code) throws IOException {
+        InputStream in = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in == null) {
+            return new byte[0];
+        }
+        String encoding = connection.getContentEncoding();
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            in = new GZIPInputStream(in);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            in = new InflaterInputStream(in);
+        }
+        try (InputStream is = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static Charset getCharset(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String part : contentType.split(";")) {
+            String p = part.trim();
+            if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+                try {
+                    return Charset.forName(p.substring(8).replace("\"", "").trim());
+                } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                    LOG.warn("Unknown charset: {}", p);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Кодировка из заголовка ответа, иначе UTF-8, если тело корректно в UTF-8, иначе cp1251
+     */
+    private static String decode(byte[] body, Charset charset) {
+        if (charset != null) {
+            return new String(body, charset);
+        }
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(body))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return new String(body, DEFAULT_CHARSET);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import ru.kamikadze_zm.raoreportgenerator.MainApp;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo.NotFound;
+import ru.kamikadze_zm.raoreportgenerator.settings.Settings;
+
+/**
+ * Сохраняемый между запусками кэш результатов поиска на кинопоиске по нормализованным названию, году и стране.
+ * Хранит и найденные фильмы, и фильмы, которые не удалось найти (со своим сроком хранения).
+ * Результаты с капчей или ошибкой загрузки не кэшируются. Запись, для которой не загружалась киностудия,
+ * не используется, если загрузка киностудий включена. Размер ограничен, при переполнении
+ * удаляются записи, которые дольше всего не использовались. Если файл не удалось прочитать,
+ * он не перезаписывается
+ */
+public class KinopoiskCache {
+
+    private static final Logger LOG = LogManager.getLogger(KinopoiskCache.class);
+
+    private static final String FILE_PATH = Settings.APP_DIR + "kinopoisk-cache.json";
+
+    private static final int MAX_ENTRIES = 20000;
+
+    private static KinopoiskCache instance;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KinopoiskCache.Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final boolean loadFailed;
+    private boolean changed;
+
+    private KinopoiskCache(boolean loadFailed) {
+        this.loadFailed = loadFailed;
+    }
+
+    /**
+     *
+     * @return кэш, при первом обращении загружается из файла
+     */
+    public static synchronized KinopoiskCache getInstance() {
+        if (instance == null) {
+            instance = load();
+        }
+        return instance;
+    }
+
+    private static KinopoiskCache load() {
+        File file = new File(FILE_PATH);
+        if (!file.exists()) {
+            return new KinopoiskCache(false);
+        }
+        List<Entry> list;
+        try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            list = new Gson().fromJson(r, new TypeToken<List<Entry>>() {
+            }.getType());
+        } catch (IOException | JsonParseException e) {
+            LOG.warn("Cannot read kinopoisk cache, it will not be overwritten: ", e);
+            return new KinopoiskCache(true);
+        }
+        KinopoiskCache cache = new KinopoiskCache(false);
+        if (list != null) {
+            //файл записан от давно использованных к недавним, порядок доступа сохраняется
+            for (Entry e : list) {
+                if (e.key != null) {
+                    cache.entries.put(e.key, e);
+                }
+            }
+        }
+        LOG.info("Kinopoisk cache loaded, entries: {}", cache.entries.size());
+        return cache;
+    }
+
+    /**
+     * Заполняет фильм из кэша
+     *
+     * @param m фильм из СТП сетки
+     * @return {@code true}, если найдена действующая запись
+     */
+    public synchronized boolean fill(MovieInfo m) {
+        if (!isEnabled()) {
+            return false;
+        }
+        String key = getKey(m);
+        Entry e = entries.get(key);
+        if (e == null) {
+            return false;
+        }
+        if (isExpired(e)) {
+            entries.remove(key);
+            changed = true;
+            return false;
+        }
+        if (MainApp.SETTINGS.isKinopoiskStudios() && !isStudioLoaded(e)) {
+            return false;
+        }
+        m.setLink(e.link);
+        m.setKinopoiskName(e.kinopoiskName);
+        m.setNotFound(e.notFound);
+        //как и при загрузке страниц, режиссер и композитор из СТП сетки не перезаписываются
+        if (e.originalName != null) {
+            m.setOriginalName(e.originalName);
+        }
+        if (e.studio != null) {
+            m.setStudio(e.studio);
+        }
+        if (e.director != null && isEmpty(m.getDirector())) {
+            m.setDirector(e.director);
+        }
+        if (e.composer != null && isEmpty(m.getComposer())) {
+            m.setComposer(e.composer);
+        }
+        return true;
+    }
+
+    /**
+     * Запоминает результат поиска фильма на кинопоиске
+     *
+     * @param m фильм с результатами поиска
+     */
+    public synchronized void put(MovieInfo m) {
+        if (!isEnabled()) {
+            return;
+        }
+        String notFound = m.getNotFound();
+        if (notFound != null && (notFound.contains(NotFound.CAPTCHA.getMessage())
+                || notFound.contains(NotFound.ERROR.getMessage()))) {
+            return;
+        }
+        if (isEmpty(m.getLink()) && (notFound == null || !notFound.contains(NotFound.MOVIE.getMessage()))) {
+            return;
+        }
+        entries.put(getKey(m), new Entry(getKey(m), m, System.currentTimeMillis()));
+        changed = true;
+    }
+
+    public synchronized void save() {
+        if (!changed) {
+            return;
+        }
+        if (loadFailed) {
+            LOG.warn("Kinopoisk cache is not saved because it could not be read: {}", FILE_PATH);
+            return;
+        }
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (isExpired(it.next())) {
+                it.remove();
+            }
+        }
+        File file = new File(FILE_PATH);
+        if (!file.exists()) {
+            file.getParentFile().mkdirs();
+        }
+        File temp = new File(FILE_PATH + ".tmp");
+        try {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                new Gson().toJson(new ArrayList<>(entries.values()), w);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            changed = false;
+        } catch (IOException e) {
+            LOG.warn("Cannot write kinopoisk cache: ", e);
+            temp.delete();
+        }
+    }
+
+    private boolean isEnabled() {
+        return MainApp.SETTINGS.getKinopoiskCacheDays() != -1;
+    }
+
+    private boolean isExpired(Entry e) {
+        int days = isEmpty(e.link)
+                ? MainApp.SETTINGS.getKinopoiskNegativeCacheDays()
+                : MainApp.SETTINGS.getKinopoiskCacheDays();
+        return days == -1 || System.currentTimeMillis() - e.time > TimeUnit.DAYS.toMillis(days);
+    }
+
+    /**
+     * Киностудия загружалась, если она записана или отмечена как не найденная,
+     * у ненайденного фильма искать ее не нужно
+     */
+    private static boolean isStudioLoaded(Entry e) {
+        if (isEmpty(e.link) || e.studio != null) {
+            return true;
+        }
+        return e.notFound != null && e.notFound.contains(NotFound.STUDIO.getMessage());
+    }
+
+    private static String getKey(MovieInfo m) {
+        return normalize(m.getName()) + "|" + normalize(m.getYear()) + "|" + normalize(m.getCountry());
+    }
+
+    private static String normalize(String s) {
+        if (s == null) {
+            return "";
+        }
+        return s.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.isEmpty();
+    }
+
+    private static class Entry {
+
+        private String key;
+        private String link;
+        private String kinopoiskName;
+        private String originalName;
+        private String studio;
+        private String director;
+        private String composer;
+        private String notFound;
+        private long time;
+
+        public Entry() {
+        }
+
+        public Entry(String key, MovieInfo m, long time) {
+            this.key = key;
+            this.link = m.getLink();
+            this.kinopoiskName = m.getKinopoiskName();
+            this.originalName = m.getOriginalName();
+            this.studio = m.getStudio();
+            this.director = m.getDirector();
+            this.composer = m.getComposer();
+            this.notFound = m.getNotFound();
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Общие потоки для загрузки кинопоиска и отправки на сервер: один планировщик для отложенных задач
+ * (ожидание перед запросом, повторы, отмена зависших загрузок) и пул для блокирующих запросов.
+ * Задачи планировщика должны быть короткими, сетевые запросы выполняются в пуле
+ */
+public class KinopoiskExecutor {
+
+    private static final Logger LOG = LogManager.getLogger(KinopoiskExecutor.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, threadFactory("kinopoisk-scheduler-"));
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(threadFactory("kinopoisk-io-"));
+
+    static {
+        //отмененные задачи (например, таймеры отмены загрузки) сразу удаляются из очереди
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private KinopoiskExecutor() {
+    }
+
+    /**
+     *
+     * @param task задача
+     * @param delayMs задержка, мс
+     * @return задача, через которую ее можно отменить
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        return SCHEDULER.schedule(() -> runLogged(task), Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     *
+     * @param task задача
+     * @param periodMs период, мс (первый запуск через период)
+     * @return задача, через которую ее можно отменить
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMs) {
+        return SCHEDULER.scheduleAtFixedRate(() -> runLogged(task), periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Выполняет блокирующую задачу (http запрос) в пуле
+     *
+     * @param task задача
+     */
+    public static void execute(Runnable task) {
+        WORKERS.execute(() -> runLogged(task));
+    }
+
+    /**
+     * Отменяет отложенные задачи и ждет завершения начатых запросов (например, отправки на сервер)
+     */
+    public static void shutdown() {
+        SCHEDULER.shutdownNow();
+        WORKERS.shutdown();
+        try {
+            if (!WORKERS.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Kinopoisk tasks are not completed in {} ms", SHUTDOWN_TIMEOUT_MS);
+                WORKERS.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            WORKERS.shutdownNow();
+        }
+    }
+
+    /**
+     * Исключение в задаче записывается в лог, иначе оно теряется в {@link java.util.concurrent.Future}
+     */
+    private static void runLogged(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOG.error("Kinopoisk task exception: ", e);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -1,32 +1,23 @@
 package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
 
-import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.beans.property.ReadOnlyIntegerWrapper;
-import javafx.beans.value.ObservableValue;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import org.w3c.dom.Document;
+import ru.kamikadze_zm.raoreportgenerator.MainApp;
 import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
 import ru.kamikadze_zm.raoreportgenerator.MovieInfo.NotFound;
 import ru.kamikadze_zm.raoreportgenerator.kinopoisk.remoteserver.HttpClient;
@@ -37,19 +28,30 @@ public class KinopoiskParser {
     private static final Logger LOG = LogManager.getLogger(KinopoiskParser.class);
 
     private static final String HOST = "https://www.kinopoisk.ru";
-    private static final String ENCODING = "cp1251";
+    static final String ENCODING = "cp1251";
 
     private static final Pattern FILM_PATTERN = Pattern.compile("film/.+|series/.+");
     private static final String CAPTCHA = "showcaptcha";
     private static final String CAST_URL_PART = "cast/";
     private static final String STUDIO_URL_PART = "studio/";
 
-    private final Iterator<MovieInfo> iterator;
+    private final MovieQueue movies;
+    private final int maxMovies;
+    private int taken;
 
-    private final Browser browser;
-    private Timer waitTimer;
+    private final PageLoader loader;
+    private final RateLimiter limiter;
+    private ScheduledFuture<?> waitTask;
+    private Page page;
+    private final boolean upload;
+    private final boolean offline;
+    private final Executor ui;
+    private final String replayDir;
+    private final boolean studios;
 
     private final Countries countries = Countries.INSTANCE;
+    private final KinopoiskCache cache = KinopoiskCache.getInstance();
+    private ExtractionRules rules;
 
     private final List<MovieInfo> restored;
 
@@ -60,27 +62,86 @@ public class KinopoiskParser {
     private RemoteMovieInfo remoteMovieInfo;
     private Status status;
     private boolean russian;
-    
-    private final Random random = new Random();
+    private boolean fromCache;
+    private final CrawlStats stats;
+    //этап, страница которого загружается или разбирается, и время начала загрузки и разбора
+    private Status pageStage;
+    private long loadStartedAt;
+    private long extractStartedAt;
+    //капча или ошибка загрузки, фильм можно повторить позже
+    private boolean retryable;
+
+    private String currentUrl;
+    //страницы и исходные данные текущего фильма для записи в папку воспроизведения
+    private List<ReplayCase.StoredPage> recordedPages;
+    private MovieInfo recordedInput;
+
+    /**
+     *
+     * @param movies общая для всех сессий очередь фильмов с повторами
+     * @param maxMovies сколько фильмов обработать в этой сессии
+     * @param loader загрузчик страниц сессии
+     * @param limiter общее для всех сессий ограничение частоты запросов
+     * @param stats общая для всех сессий статистика
+     * @param restored фильмы из временного файла прерванного запуска
+     */
+    public KinopoiskParser(MovieQueue movies, int maxMovies, PageLoader loader, RateLimiter limiter, CrawlStats stats,
+            List<MovieInfo> restored) {
+        this(movies, maxMovies, loader, limiter, stats, restored, false, Platform::runLater);
+    }
+
+    /**
+     * Разбор без кэша, временного файла, отправки на сервер, повторов и задержек, свойства обновляются
+     * в потоке разбора (для воспроизведения сохраненных страниц)
+     */
+    static KinopoiskParser offline(MovieQueue movies, PageLoader loader, CrawlStats stats) {
+        return new KinopoiskParser(movies, Integer.MAX_VALUE, loader, RateLimiter.unlimited(), stats, null, true, Runnable::run);
+    }
 
-    public KinopoiskParser(List<MovieInfo> movies, Browser browser, List<MovieInfo> restored) {
-        this.iterator = movies.iterator();
-        this.browser = browser;
+    private KinopoiskParser(MovieQueue movies, int maxMovies, PageLoader loader, RateLimiter limiter, CrawlStats stats,
+            List<MovieInfo> restored, boolean offline, Executor ui) {
+        this.movies = movies;
+        this.maxMovies = maxMovies;
+        this.loader = loader;
+        this.limiter = limiter;
+        this.stats = stats;
+        this.offline = offline;
+        this.ui = ui;
+        //html страниц нужен только для отправки на сервер и записи страниц для воспроизведения
+        this.upload = !offline && MainApp.SETTINGS.getServerSettings().isUploadEnabled();
+        this.replayDir = offline ? "" : MainApp.SETTINGS.getKinopoiskReplayDir();
+        this.studios = MainApp.SETTINGS.isKinopoiskStudios();
         if (restored != null) {
             this.restored = restored;
         } else {
             this.restored = Collections.emptyList();
         }
 
-        this.browser.completedProperty().addListener((ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) -> {
-            if (newValue == true) {
-                if (this.browser.getDocument() == null) {
-                    currentMovie.addNotFound(NotFound.ERROR);
-                    status = Status.NEXT;
-                }
-                nextStep();
+        this.loader.setOnLoaded(p -> {
+            long loadedAt = System.nanoTime();
+            stats.recordLoad(pageStage, loadedAt - loadStartedAt);
+            page = p;
+            if (recordedPages != null && p != null) {
+                recordedPages.add(new ReplayCase.StoredPage(currentUrl, p));
             }
-
+            if (p == null) {
+                limiter.getPacing().onError();
+                stats.error();
+                retryable = true;
+                currentMovie.addNotFound(NotFound.ERROR);
+                status = Status.NEXT;
+            } else if (p.getLocation().contains(CAPTCHA)) {
+                limiter.getPacing().onCaptcha();
+                stats.captcha();
+            } else {
+                limiter.getPacing().onSuccess();
+            }
+            if (p != null) {
+                extractStartedAt = loadedAt;
+            }
+            nextStep();
+            endExtract();
+            page = null;
         });
 
     }
@@ -112,16 +173,16 @@ public class KinopoiskParser {
                     loadNextMovie();
                     break;
                 case SEARCH:
-                    parseSearchResult(this.browser.getDocument(), currentMovie);
+                    parseSearchResult(page, currentMovie);
                     break;
                 case FILM:
-                    parseFilm(this.browser.getDocument(), currentMovie);
+                    parseFilm(page, currentMovie);
                     break;
                 case STUDIO:
-                    parseStudio(this.browser.getDocument(), currentMovie);
+                    parseStudio(page, currentMovie);
                     break;
                 case CAST:
-                    parseCast(this.browser.getDocument(), currentMovie);
+                    parseCast(page, currentMovie);
                     break;
                 default:
                     LOG.warn("Unknown status: " + status);
@@ -131,71 +192,179 @@ public class KinopoiskParser {
             if (e.getClass() != ParseKinopoiskException.class) {
                 LOG.warn("Unexpected exception: ", e);
             }
-            currentMovie.addNotFound(NotFound.ERROR);
+            if (currentMovie != null) {
+                currentMovie.addNotFound(NotFound.ERROR);
+            }
             loadNextMovie();
         }
     }
 
     private void loadNextMovie() {
-        if (currentMovie != null) {
-            TempUtil.save(currentMovie);
-            LOG.info("Finish {}", currentMovie);
-            if (remoteMovieInfo.getId() != null) {
-                HttpClient.post(remoteMovieInfo);
+        endExtract();
+        finishMovie();
+        //фильмы из временного файла и кэша обрабатываются циклом, без загрузки страниц
+        MovieInfo next;
+        while (taken < maxMovies && (next = movies.poll()) != null) {
+            boolean retry = movies.isRetry(next);
+            if (!retry) {
+                updateProgress();
             }
-        }
-        if (iterator.hasNext()) {
-            updateProgress();
-            currentMovie = iterator.next();
+            currentMovie = next;
             LOG.info("Start {}", currentMovie);
+            rules = ExtractionRules.getInstance();
             remoteMovieInfo = new RemoteMovieInfo(currentMovie.getName());
             russian = false;
-            int ri = -1;
-            if (!restored.isEmpty()) {
-                ri = restored.indexOf(currentMovie);
-            }
-            if (ri != -1) {
-                MovieInfo rm = restored.get(ri);
-                currentMovie.setOriginalName(rm.getOriginalName());
-                currentMovie.setLink(rm.getLink());
-                currentMovie.setNotFound(rm.getNotFound());
-                currentMovie.setDirector(rm.getDirector());
-                currentMovie.setComposer(rm.getComposer());
-                currentMovie.setStudio(rm.getStudio());
-                status = Status.NEXT;
-                nextStep();
+            fromCache = false;
+            retryable = false;
+            recordedPages = null;
+            if (retry || !restore(currentMovie)) {
+                if (!offline && cache.fill(currentMovie)) {
+                    LOG.info("From cache");
+                    stats.cacheHit();
+                    fromCache = true;
+                } else {
+                    //в счет сессии идут только фильмы, для которых загружаются страницы
+                    taken++;
+                    stats.film();
+                    if (!replayDir.isEmpty()) {
+                        recordedPages = new ArrayList<>();
+                        recordedInput = currentMovie.copy();
+                    }
+                    loadSearchPage(currentMovie);
+                    return;
+                }
             } else {
-                loadSearchPage(currentMovie);
+                stats.restored();
             }
-        } else {
-            setCompleted(true);
+            finishMovie();
         }
+        long retryDelay = movies.getRetryDelay();
+        if (taken < maxMovies && retryDelay != -1) {
+            waitForRetry(retryDelay);
+            return;
+        }
+        if (!offline) {
+            cache.save();
+        }
+        stats.addCancellations(loader.getCancellations());
+        setCompleted(true);
     }
 
-    private void waitAndLoadPage(String url, long waitMs) throws ParseKinopoiskException {
-        if (waitTimer != null) {
-            waitTimer.cancel();
+    private void finishMovie() {
+        if (currentMovie == null) {
+            return;
+        }
+        LOG.info("Finish {}", currentMovie);
+        if (offline) {
+            currentMovie = null;
+            return;
+        }
+        if (retryable && movies.retry(currentMovie)) {
+            stats.retry();
+            resetResult(currentMovie);
+            currentMovie = null;
+            return;
+        }
+        TempUtil.save(currentMovie);
+        if (!fromCache) {
+            cache.put(currentMovie);
+        }
+        if (recordedPages != null && !recordedPages.isEmpty()) {
+            ReplayCase.write(replayDir, new ReplayCase(recordedInput, currentMovie, recordedPages));
+        }
+        if (remoteMovieInfo.getId() != null) {
+            HttpClient.post(remoteMovieInfo);
         }
-        waitTimer = new Timer(true);
-        int offset = random.nextInt(2500);
-        boolean plus = random.nextBoolean();
-        waitMs = plus ? waitMs + offset : waitMs - offset;
+        currentMovie = null;
+    }
+
+    /**
+     * Сбрасывает найденное на кинопоиске перед повтором, режиссер и композитор
+     * перезаписываются только на последней странице, поэтому остаются из СТП сетки
+     */
+    private void resetResult(MovieInfo m) {
+        m.setNotFound(null);
+        m.setLink(null);
+        m.setKinopoiskName(null);
+        m.setOriginalName(null);
+        m.setStudio(null);
+    }
+
+    private void waitForRetry(long waitMs) {
+        cancelWaitTask();
+        status = Status.NEXT;
+        LOG.info("Waiting for retry, {} ms", waitMs);
+        waitTask = KinopoiskExecutor.schedule(new RetryTask(this), waitMs);
+    }
+
+    /**
+     * Результат с капчей или ошибкой загрузки из прерванного запуска не восстанавливается, фильм ищется снова
+     */
+    private boolean restore(MovieInfo m) {
+        int ri = -1;
+        if (!restored.isEmpty()) {
+            ri = restored.indexOf(m);
+        }
+        if (ri == -1) {
+            return false;
+        }
+        MovieInfo rm = restored.get(ri);
+        String notFound = rm.getNotFound();
+        if (notFound != null && (notFound.contains(NotFound.CAPTCHA.getMessage())
+                || notFound.contains(NotFound.ERROR.getMessage()))) {
+            return false;
+        }
+        m.setOriginalName(rm.getOriginalName());
+        m.setLink(rm.getLink());
+        m.setNotFound(rm.getNotFound());
+        m.setDirector(rm.getDirector());
+        m.setComposer(rm.getComposer());
+        m.setStudio(rm.getStudio());
+        return true;
+    }
+
+    /**
+     * Время загрузки определяет общее для всех сессий ограничение частоты запросов
+     */
+    private void waitAndLoadPage(String url) throws ParseKinopoiskException {
+        endExtract();
+        cancelWaitTask();
+        long waitMs = limiter.reserve();
         LOG.info("Start timer. Url - {}, waiting = {}", url, waitMs);
-        waitTimer.schedule(new WaitingTask(this, url), waitMs);
+        waitTask = KinopoiskExecutor.schedule(new WaitingTask(this, url), waitMs);
+    }
+
+    private void cancelWaitTask() {
+        if (waitTask != null) {
+            waitTask.cancel(false);
+        }
+    }
+
+    /**
+     * Время разбора страницы - от загрузки до перехода к следующей странице или фильму
+     */
+    private void endExtract() {
+        if (extractStartedAt != 0) {
+            stats.recordExtract(pageStage, System.nanoTime() - extractStartedAt);
+            extractStartedAt = 0;
+        }
     }
 
     private void loadPage(String url) throws ParseKinopoiskException {
-        Platform.runLater(() -> browser.loadPage(url));
+        currentUrl = url;
+        pageStage = status;
+        loadStartedAt = System.nanoTime();
+        loader.loadPage(url);
     }
 
     private void loadSearchPage(MovieInfo m) throws ParseKinopoiskException {
         status = Status.SEARCH;
-        waitAndLoadPage(getUrl(m.getName(), m.getYear(), m.getCountry()), 25000);
+        waitAndLoadPage(getUrl(m.getName(), m.getYear(), m.getCountry()));
         LOG.info("Search");
     }
 
-    private void parseSearchResult(Document d, MovieInfo m) {
-        String location = d.getDocumentURI();
+    private void parseSearchResult(Page p, MovieInfo m) {
+        String location = p.getLocation();
 
         LOG.info("Location: " + location);
 
@@ -203,46 +372,41 @@ public class KinopoiskParser {
 
         if (!checkCaptcha(location, m)) {
             if (matcher.find()) {
-                parseFilm(d, m);
+                parseFilm(p, m);
             } else {
-                loadFilmPage(d, m);
+                loadFilmPage(p, m);
             }
         } else {
             nextStep();
         }
     }
 
-    private void loadFilmPage(Document d, MovieInfo m) throws ParseKinopoiskException {
-        org.jsoup.nodes.Document jDoc = getJsoupDocument(d);
+    private void loadFilmPage(Page p, MovieInfo m) throws ParseKinopoiskException {
+        Document jDoc = p.getDocument();
 
-        Elements els = jDoc.getElementsByClass("element most_wanted");
-        if (els == null || els.isEmpty()) {
+        String filmUrl = rules.get("search.filmUrl").value(jDoc);
+        if (filmUrl == null) {
             m.addNotFound(NotFound.MOVIE);
             loadNextMovie();
             return;
         }
-        Element name = els.get(0).getElementsByClass("name").get(0);
-        Element link = name.getElementsByTag("a").get(0);
 
         status = Status.FILM;
-        waitAndLoadPage(HOST + link.attr("data-url"), 20000);
+        waitAndLoadPage(HOST + filmUrl);
         LOG.info("Film");
     }
 
-    private void parseFilm(Document d, MovieInfo m) {
-        String location = d.getDocumentURI();
+    private void parseFilm(Page p, MovieInfo m) {
+        String location = p.getLocation();
 
         if (checkCaptcha(location, m)) {
             nextStep();
             return;
         }
 
-        String html = documentToString(d);
-        org.jsoup.nodes.Document jDoc = getJsoupDocument(html);
+        Document jDoc = p.getDocument();
 
-        Elements els = jDoc.getElementsByAttributeValue("itemprop", "name");
-        Element e = els.first();
-        String name = e.getElementsByTag("span").first().text().trim();
+        String name = rules.get("film.name").value(jDoc);
 
         if (!m.getName().equalsIgnoreCase(name)) {
             m.addNotFound(NotFound.CANDIDATE);
@@ -253,215 +417,146 @@ public class KinopoiskParser {
 
         remoteMovieInfo.setLinkAndId(location);
         remoteMovieInfo.setName(name);
-        remoteMovieInfo.setMainHtml(html);
+        if (upload) {
+            remoteMovieInfo.setMainHtml(p.getHtml());
+        }
 
-        Elements originalNameEls = jDoc.getElementsByAttributeValueContaining("class", "styles_originalTitle");
-        if (!originalNameEls.isEmpty()) {
-            String originalName = originalNameEls.first().text();
-            if (!originalName.isEmpty()) {
-                m.setOriginalName(originalName.trim());
-            }
+        String originalName = rules.get("film.originalName").value(jDoc);
+        if (originalName != null) {
+            m.setOriginalName(originalName);
         }
 
-        Elements sections = jDoc.getElementsByClass("film-page-section-title");
-        if (!sections.isEmpty() && sections.first().tag().getName().equalsIgnoreCase("h3")) {
-            Elements infoBlock = sections.first().nextElementSibling().children();
-            if (infoBlock.size() > 1) {
-                Element countriesRow = infoBlock.get(1);
-                Elements aCountries = countriesRow.getElementsByTag("a");
-                for (Element a : aCountries) {
-                    String c = a.text().toLowerCase();
-                    if (c.contains("россия") || c.contains("ссср")) {
-                        russian = true;
-                        break;
-                    }
-                }
+        for (String country : rules.get("film.countries").values(jDoc)) {
+            String c = country.toLowerCase();
+            if (c.contains("россия") || c.contains("ссср")) {
+                russian = true;
+                break;
             }
         }
 
-        Elements spoilers = jDoc.getElementsByAttributeValueContaining("class", "styles_itemsSpoiler");
-        if (!spoilers.isEmpty()) {
-            Elements menu = spoilers.first().getElementsByTag("a");
-            Element aStudio = null;
-            for (Element a : menu) {
-                if (a.text().toLowerCase().contains("студии")) {
-                    aStudio = a;
-                    break;
-                }
-            }
-            if (aStudio == null || aStudio.className().toLowerCase().contains("styles_itemdisbale")) {
-                m.addNotFound(NotFound.STUDIO);
-                loadCastPage(m);
-            } else {
-                loadStudioPage(m);
-            }
+        if (!studios) {
+            stats.skippedPage();
+            m.addNotFound(NotFound.STUDIO_SKIPPED);
+            loadCastPage(m);
+            return;
+        }
+
+        Element aStudio = rules.get("film.studioLink").first(jDoc);
+        if (aStudio == null || aStudio.className().toLowerCase().contains("styles_itemdisbale")) {
+            m.addNotFound(NotFound.STUDIO);
+            loadCastPage(m);
+        } else {
+            loadStudioPage(m);
         }
     }
 
     private void loadStudioPage(MovieInfo m) throws ParseKinopoiskException {
         status = Status.STUDIO;
-        waitAndLoadPage(m.getLink().replace("series", "film") + STUDIO_URL_PART, 20000);
+        waitAndLoadPage(m.getLink().replace("series", "film") + STUDIO_URL_PART);
         LOG.info("Studio");
     }
 
-    private void parseStudio(Document d, MovieInfo m) {
-        String location = d.getDocumentURI();
+    private void parseStudio(Page p, MovieInfo m) {
+        String location = p.getLocation();
         if (checkCaptcha(location, m)) {
             nextStep();
             return;
         }
 
-        String html = documentToString(d);
-        org.jsoup.nodes.Document jDoc = getJsoupDocument(html);
-
-        remoteMovieInfo.setStudiosHtml(html);
-
-        Element start = jDoc.getElementById("block_left");
-        Element el = start.child(0);
-        el = el.getElementsByTag("table").get(0);
-        el = el.getElementsByTag("tr").get(0);
-        el = el.getElementsByTag("table").get(0);
-        el = el.getElementsByTag("tr").get(3);
-        el = el.getElementsByTag("td").get(0);
-        el = el.getElementsByTag("div").get(0);
-        el = el.getElementsByTag("table").get(0);
-
-        Elements trs = el.getElementsByTag("tr");
-        String studio = "";
-        boolean first = true;
-        for (int i = 2; i < trs.size() - 1; i++) {
-            Element a = trs.get(i).getElementsByTag("td").get(1).getElementsByTag("a").get(0);
-            if (!first) {
-                studio += ", ";
-            } else {
-                first = false;
-            }
-            studio += a.text();
+        Document jDoc = p.getDocument();
+
+        if (upload) {
+            remoteMovieInfo.setStudiosHtml(p.getHtml());
         }
-        m.setStudio(studio);
+
+        String studio = rules.get("studio.names").value(jDoc);
+        m.setStudio(studio != null ? studio : "");
 
         loadCastPage(m);
     }
 
+    /**
+     * Страница съемочной группы загружается, только если в СТП сетке нет режиссера или композитора
+     */
     private void loadCastPage(MovieInfo m) throws ParseKinopoiskException {
+        if (!isEmpty(m.getDirector()) && !isEmpty(m.getComposer())) {
+            LOG.info("Director and composer from stp grid");
+            stats.skippedPage();
+            loadNextMovie();
+            return;
+        }
         status = Status.CAST;
-        waitAndLoadPage(m.getLink().replace("series", "film") + CAST_URL_PART, 20000);
+        waitAndLoadPage(m.getLink().replace("series", "film") + CAST_URL_PART);
         LOG.info("Cast");
     }
 
-    private void parseCast(Document d, MovieInfo m) {
-        String location = d.getDocumentURI();
+    private void parseCast(Page p, MovieInfo m) {
+        String location = p.getLocation();
         if (checkCaptcha(location, m)) {
             nextStep();
             return;
         }
 
-        String html = documentToString(d);
-        org.jsoup.nodes.Document jDoc = getJsoupDocument(html);
-
-        remoteMovieInfo.setCastHtml(html);
-
-        Elements els = jDoc.getElementsByAttributeValue("name", "director");
-        if (!els.isEmpty()) {
-            Element aDirector = els.first();
-            String director = "";
-            boolean first = true;
-            Element elDirector = aDirector.nextElementSibling().nextElementSibling();
-            while (elDirector != null && elDirector.tagName().equalsIgnoreCase("div") && elDirector.hasClass("dub")) {
-                Element actorInfo = elDirector.getElementsByClass("actorInfo").first();
-                Element nameDiv = actorInfo.getElementsByClass("name").first();
-                String name = nameDiv.getElementsByTag("a").first().text().trim();
-                Elements spanSecondName = nameDiv.getElementsByTag("span");
-                String secondName = null;
-                if (!spanSecondName.isEmpty()) {
-                    secondName = spanSecondName.first().text().trim();
-                }
-                if (first) {
-                    first = false;
-                } else {
-                    director += ", ";
-                }
-                if (russian || secondName == null) {
-                    director += name;
-                } else {
-                    director += secondName;
-                }
-                elDirector = elDirector.nextElementSibling();
+        Document jDoc = p.getDocument();
+
+        if (upload) {
+            remoteMovieInfo.setCastHtml(p.getHtml());
+        }
+
+        //значения из СТП сетки не перезаписываются
+        if (isEmpty(m.getDirector())) {
+            String director = parsePersons(jDoc, "cast.directors");
+            if (director != null) {
+                m.setDirector(director);
+            } else {
+                m.addNotFound(NotFound.DIRECTOR);
             }
-            m.setDirector(director);
-        } else {
-            m.addNotFound(NotFound.DIRECTOR);
-        }
-
-        els = jDoc.getElementsByAttributeValue("name", "composer");
-
-        if (!els.isEmpty()) {
-            Element aComposer = els.first();
-            String composer = "";
-            boolean first = true;
-            Element elComposer = aComposer.nextElementSibling().nextElementSibling();
-            while (elComposer != null && elComposer.tagName().equalsIgnoreCase("div") && elComposer.hasClass("dub")) {
-                Element actorInfo = elComposer.getElementsByClass("actorInfo").first();
-                Element nameDiv = actorInfo.getElementsByClass("name").first();
-                String name = nameDiv.getElementsByTag("a").first().text().trim();
-                Elements spanSecondName = nameDiv.getElementsByTag("span");
-                String secondName = null;
-                if (!spanSecondName.isEmpty()) {
-                    secondName = spanSecondName.first().text().trim();
-                }
-                if (first) {
-                    first = false;
-                } else {
-                    composer += ", ";
-                }
-                if (russian || secondName == null) {
-                    composer += name;
-                } else {
-                    composer += secondName;
-                }
-                elComposer = elComposer.nextElementSibling();
+        }
+
+        if (isEmpty(m.getComposer())) {
+            String composer = parsePersons(jDoc, "cast.composers");
+            if (composer != null) {
+                m.setComposer(composer);
+            } else {
+                m.addNotFound(NotFound.COMPOSER);
             }
-            m.setComposer(composer);
-        } else {
-            m.addNotFound(NotFound.COMPOSER);
         }
 
         loadNextMovie();
     }
 
-    private void updateProgress() {
-        Platform.runLater(() -> progress.set(getProgress() + 1));
-    }
-
-    private void setCompleted(boolean value) {
-        Platform.runLater(() -> completed.set(value));
-    }
-
-    private org.jsoup.nodes.Document getJsoupDocument(Document d) throws ParseKinopoiskException {
-        return getJsoupDocument(documentToString(d));
+    /**
+     * Для российских фильмов берется имя на русском, для остальных - оригинальное, если оно указано
+     *
+     * @param rule правило, находящее блоки людей
+     * @return имена через запятую, {@code null} - никого нет
+     */
+    private String parsePersons(Document jDoc, String rule) throws ParseKinopoiskException {
+        Elements persons = rules.get(rule).elements(jDoc);
+        if (persons.isEmpty()) {
+            return null;
+        }
+        ExtractionRule nameRule = rules.get("cast.name");
+        ExtractionRule secondNameRule = rules.get("cast.secondName");
+        List<String> names = new ArrayList<>(persons.size());
+        for (Element person : persons) {
+            String name = nameRule.value(person);
+            String secondName = secondNameRule.value(person);
+            if (!russian && secondName != null) {
+                names.add(secondName);
+            } else if (name != null) {
+                names.add(name);
+            }
+        }
+        return String.join(", ", names);
     }
 
-    private org.jsoup.nodes.Document getJsoupDocument(String html) throws ParseKinopoiskException {
-        return Jsoup.parse(html, ENCODING);
+    private void updateProgress() {
+        ui.execute(() -> progress.set(getProgress() + 1));
     }
 
-    private String documentToString(Document doc) throws ParseKinopoiskException {
-        try {
-            StringWriter sw = new StringWriter();
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer transformer = tf.newTransformer();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
-            transformer.setOutputProperty(OutputKeys.METHOD, "html");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty(OutputKeys.ENCODING, ENCODING);
-
-            transformer.transform(new DOMSource(doc), new StreamResult(sw));
-            return sw.toString();
-        } catch (TransformerException e) {
-            LOG.warn("TransformerException: ", e);
-            throw new ParseKinopoiskException("TransformerException");
-
-        }
+    private void setCompleted(boolean value) {
+        ui.execute(() -> completed.set(value));
     }
 
     //https://www.kinopoisk.ru/index.php?level=7&from=forma&result=adv&m_act[from]=forma&m_act[what]=content&m_act[find]=��������&m_act[year]=2005
@@ -495,25 +590,31 @@ public class KinopoiskParser {
         if (location.contains(CAPTCHA)) {
             LOG.warn("CAPCHA " + location + "   " + m);
             m.addNotFound(NotFound.CAPTCHA);
+            retryable = true;
             status = Status.NEXT;
             return true;
         }
         return false;
     }
 
+    private static boolean isEmpty(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
     private String encode(String p) throws UnsupportedEncodingException {
         return URLEncoder.encode(p, ENCODING);
 
     }
 
-    private static enum Status {
+    static enum Status {
         NEXT, SEARCH, FILM, STUDIO, CAST;
     }
 
-    private class WaitingTask extends TimerTask {
+    private class WaitingTask implements Runnable {
 
         private final KinopoiskParser kp;
         private final String url;
+        private final long scheduledAt = System.nanoTime();
 
         public WaitingTask(KinopoiskParser kp, String url) {
             this.kp = kp;
@@ -523,7 +624,23 @@ public class KinopoiskParser {
         @Override
         public void run() {
             LOG.info("Timer task is run. Url - {}", url);
+            kp.stats.recordWait(kp.status, System.nanoTime() - scheduledAt);
             kp.loadPage(url);
         }
     }
+
+    private class RetryTask implements Runnable {
+
+        private final KinopoiskParser kp;
+
+        public RetryTask(KinopoiskParser kp) {
+            this.kp = kp;
+        }
+
+        @Override
+        public void run() {
+            LOG.info("Retry timer task is run");
+            kp.nextStep();
+        }
+    }
 }
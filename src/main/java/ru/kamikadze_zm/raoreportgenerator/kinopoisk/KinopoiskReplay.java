@@ -0,0 +1,87 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+
+/**
+ * Воспроизведение разбора кинопоиска по страницам, сохраненным в папку воспроизведения
+ * (настройка кинопоиска), без браузера и задержек. Выводит скорость разбора и расхождения
+ * с результатом, полученным при записи.
+ * <p>
+ * Запуск: {@code java -cp <jar> ru.kamikadze_zm.raoreportgenerator.kinopoisk.KinopoiskReplay <папка> [повторов]}
+ */
+public class KinopoiskReplay {
+
+    private static final Map<String, Function<MovieInfo, String>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("link", MovieInfo::getLink);
+        FIELDS.put("kinopoiskName", MovieInfo::getKinopoiskName);
+        FIELDS.put("originalName", MovieInfo::getOriginalName);
+        FIELDS.put("studio", MovieInfo::getStudio);
+        FIELDS.put("director", MovieInfo::getDirector);
+        FIELDS.put("composer", MovieInfo::getComposer);
+        FIELDS.put("notFound", MovieInfo::getNotFound);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: KinopoiskReplay <replay dir> [iterations]");
+            System.exit(1);
+        }
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        List<ReplayCase> cases = ReplayCase.readAll(args[0]);
+        if (cases.isEmpty()) {
+            System.out.println("No replay cases in " + args[0]);
+            System.exit(1);
+        }
+
+        List<MovieInfo> results = null;
+        for (int i = 1; i <= iterations; i++) {
+            List<MovieInfo> movies = new ArrayList<>(cases.size());
+            for (ReplayCase c : cases) {
+                movies.add(c.getInput().copy());
+            }
+            ReplayPageLoader loader = new ReplayPageLoader(cases);
+            CrawlStats stats = new CrawlStats();
+            KinopoiskParser parser = KinopoiskParser.offline(new MovieQueue(movies), loader, stats);
+            CountDownLatch done = new CountDownLatch(1);
+            parser.completedProperty().addListener((obs, ov, nv) -> done.countDown());
+
+            long start = System.nanoTime();
+            parser.parse();
+            done.await();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("Iteration %d: films %d, pages %d (missing %d), %.3f s, %.1f pages/s, %.2f ms/page%n",
+                    i, movies.size(), loader.getLoaded(), loader.getMissing(), seconds,
+                    loader.getLoaded() / seconds, seconds * 1000 / Math.max(1, loader.getLoaded()));
+            System.out.println(stats.getSummary());
+            results = movies;
+        }
+
+        int diffs = 0;
+        for (int i = 0; i < cases.size(); i++) {
+            MovieInfo expected = cases.get(i).getExpected();
+            MovieInfo actual = results.get(i);
+            for (Map.Entry<String, Function<MovieInfo, String>> f : FIELDS.entrySet()) {
+                String e = f.getValue().apply(expected);
+                String a = f.getValue().apply(actual);
+                if (!Objects.equals(e, a)) {
+                    diffs++;
+                    System.out.printf("%s (%s): %s%n    expected: %s%n    actual:   %s%n",
+                            expected.getName(), expected.getYear(), f.getKey(), e, a);
+                }
+            }
+        }
+        System.out.printf("Films: %d, field differences: %d%n", cases.size(), diffs);
+        KinopoiskExecutor.shutdown();
+        System.exit(diffs == 0 ? 0 : 2);
+    }
+}
@@ -0,0 +1,105 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+
+/**
+ * Общая для всех сессий очередь фильмов для поиска на кинопоиске.
+ * Фильмы с капчей или ошибкой загрузки возвращаются в очередь и повторяются после паузы,
+ * которая удваивается с каждой попыткой. Число попыток для одного фильма ограничено
+ */
+public class MovieQueue {
+
+    private static final Logger LOG = LogManager.getLogger(MovieQueue.class);
+
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long FIRST_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(2);
+
+    private final Queue<MovieInfo> movies;
+    private final PriorityQueue<Retry> retries = new PriorityQueue<>((r1, r2) -> Long.compare(r1.readyAt, r2.readyAt));
+    private final Map<MovieInfo, Integer> attempts = new HashMap<>();
+
+    public MovieQueue(Collection<MovieInfo> movies) {
+        this.movies = new ArrayDeque<>(movies);
+    }
+
+    /**
+     * Фильмы, ожидавшие повтора дольше паузы, выдаются раньше остальных
+     *
+     * @return следующий фильм или {@code null}, если сейчас выдать нечего
+     */
+    public synchronized MovieInfo poll() {
+        Retry r = retries.peek();
+        if (r != null && r.readyAt <= System.currentTimeMillis()) {
+            retries.poll();
+            LOG.info("Retry {}, attempt {}", r.movie.getName(), attempts.get(r.movie) + 1);
+            return r.movie;
+        }
+        return movies.poll();
+    }
+
+    /**
+     *
+     * @return через сколько миллисекунд можно будет повторить ближайший фильм, -1 - повторов нет
+     */
+    public synchronized long getRetryDelay() {
+        Retry r = retries.peek();
+        if (r == null) {
+            return -1;
+        }
+        return Math.max(0, r.readyAt - System.currentTimeMillis());
+    }
+
+    /**
+     * Ставит фильм в очередь на повтор
+     *
+     * @param m фильм с капчей или ошибкой загрузки
+     * @return {@code false}, если попытки для фильма исчерпаны
+     */
+    public synchronized boolean retry(MovieInfo m) {
+        int attempt = attempts.getOrDefault(m, 1);
+        if (attempt >= MAX_ATTEMPTS) {
+            return false;
+        }
+        attempts.put(m, attempt + 1);
+        long delay = FIRST_RETRY_DELAY_MS << (attempt - 1);
+        retries.add(new Retry(m, System.currentTimeMillis() + delay));
+        LOG.info("Retry {} in {} ms", m.getName(), delay);
+        return true;
+    }
+
+    /**
+     *
+     * @return фильм выдан повторно
+     */
+    public synchronized boolean isRetry(MovieInfo m) {
+        return attempts.containsKey(m);
+    }
+
+    /**
+     *
+     * @return нет ни новых фильмов, ни ожидающих повтора
+     */
+    public synchronized boolean isEmpty() {
+        return movies.isEmpty() && retries.isEmpty();
+    }
+
+    private static class Retry {
+
+        private final MovieInfo movie;
+        private final long readyAt;
+
+        public Retry(MovieInfo movie, long readyAt) {
+            this.movie = movie;
+            this.readyAt = readyAt;
+        }
+    }
+}
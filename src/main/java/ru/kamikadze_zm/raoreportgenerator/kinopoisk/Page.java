@@ -0,0 +1,37 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * Загруженная страница: адрес после всех перенаправлений, html и разобранный документ
+ */
+public class Page {
+
+    private final String location;
+    private final String html;
+    private final Document document;
+
+    /**
+     *
+     * @param location адрес страницы после перенаправлений
+     * @param html html страницы
+     */
+    public Page(String location, String html) {
+        this.location = location;
+        this.html = html;
+        this.document = Jsoup.parse(html, location);
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getHtml() {
+        return html;
+    }
+
+    public Document getDocument() {
+        return document;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import java.util.function.Consumer;
+
+/**
+ * Способ загрузки страниц кинопоиска. Одновременно загружается одна страница,
+ * по завершении загрузки вызывается обработчик
+ */
+public interface PageLoader {
+
+    /**
+     *
+     * @param onLoaded обработчик загруженной страницы, получает {@code null}, если страницу загрузить не удалось
+     */
+    void setOnLoaded(Consumer<Page> onLoaded);
+
+    /**
+     *
+     * @param url адрес страницы
+     * @throws ParseKinopoiskException если не завершена загрузка предыдущей страницы
+     */
+    void loadPage(String url) throws ParseKinopoiskException;
+
+    /**
+     *
+     * @return сколько раз загрузка страницы прерывалась по таймауту
+     */
+    default int getCancellations() {
+        return 0;
+    }
+}
@@ -0,0 +1,76 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общее для всех сессий ограничение частоты запросов к кинопоиску (token bucket):
+ * не больше заданного числа запросов в минуту, до {@code burst} запросов подряд без ожидания.
+ * Промежуток между запросами не меньше текущей задержки {@link AdaptivePacing}, к нему добавляется
+ * случайная задержка, чтобы запросы не шли через равные промежутки
+ */
+public class RateLimiter {
+
+    private static final int MAX_JITTER_MS = 2500;
+
+    private final double minIntervalMs;
+    private final int maxJitterMs;
+    private final double burst;
+    private final AdaptivePacing pacing;
+    private final Random random = new Random();
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     *
+     * @param requestsPerMinute запросов в минуту
+     * @param burst сколько запросов можно сделать подряд без ожидания
+     * @param pacing подстройка задержки по ответам сайта
+     */
+    public RateLimiter(int requestsPerMinute, int burst, AdaptivePacing pacing) {
+        this(TimeUnit.MINUTES.toMillis(1) / (double) Math.max(1, requestsPerMinute), burst, MAX_JITTER_MS, pacing);
+    }
+
+    private RateLimiter(double minIntervalMs, int burst, int maxJitterMs, AdaptivePacing pacing) {
+        this.minIntervalMs = minIntervalMs;
+        this.maxJitterMs = maxJitterMs;
+        this.burst = Math.max(1, burst);
+        this.pacing = pacing;
+        this.tokens = this.burst;
+        this.lastRefill = System.currentTimeMillis();
+    }
+
+    /**
+     *
+     * @return ограничение без задержек (для воспроизведения сохраненных страниц)
+     */
+    static RateLimiter unlimited() {
+        return new RateLimiter(0, 1, 0, new AdaptivePacing(0, 0));
+    }
+
+    public AdaptivePacing getPacing() {
+        return pacing;
+    }
+
+    /**
+     * Резервирует один запрос
+     *
+     * @return через сколько миллисекунд можно выполнить запрос
+     */
+    public synchronized long reserve() {
+        long jitter = maxJitterMs > 0 ? random.nextInt(maxJitterMs) : 0;
+        double intervalMs = Math.max(minIntervalMs, pacing.getDelayMs());
+        if (intervalMs <= 0) {
+            return jitter;
+        }
+        long now = System.currentTimeMillis();
+        tokens = Math.min(burst, tokens + (now - lastRefill) / intervalMs);
+        lastRefill = now;
+        tokens -= 1;
+        if (tokens >= 0) {
+            return jitter;
+        }
+        return (long) Math.ceil(-tokens * intervalMs) + jitter;
+    }
+}
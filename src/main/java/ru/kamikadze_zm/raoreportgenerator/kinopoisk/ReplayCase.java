@@ -0,0 +1,123 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+
+/**
+ * Сохраненные страницы одного фильма для воспроизведения разбора без загрузки:
+ * фильм из СТП сетки, результат разбора и загруженные страницы (поиск, фильм, киностудии, съемочная группа)
+ */
+public class ReplayCase {
+
+    private static final Logger LOG = LogManager.getLogger(ReplayCase.class);
+
+    private static final String EXT = ".json";
+
+    private MovieInfo input;
+    private MovieInfo expected;
+    private List<StoredPage> pages;
+
+    public ReplayCase() {
+    }
+
+    public ReplayCase(MovieInfo input, MovieInfo expected, List<StoredPage> pages) {
+        this.input = input;
+        this.expected = expected;
+        this.pages = pages;
+    }
+
+    public MovieInfo getInput() {
+        return input;
+    }
+
+    public MovieInfo getExpected() {
+        return expected;
+    }
+
+    public List<StoredPage> getPages() {
+        return pages;
+    }
+
+    /**
+     * Записывает фильм в отдельный файл папки, имя файла - из названия, года и страны
+     */
+    public static void write(String dir, ReplayCase c) {
+        File d = new File(dir);
+        if (!d.exists()) {
+            d.mkdirs();
+        }
+        String name = (c.input.getName() + "_" + c.input.getYear() + "_" + c.input.getCountry()).replaceAll("[\\\\/:*?\"<>|\\s]+", "_");
+        File file = new File(d, name + EXT);
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            new Gson().toJson(c, w);
+        } catch (IOException e) {
+            LOG.warn("Cannot write replay case " + file + ": ", e);
+        }
+    }
+
+    public static List<ReplayCase> readAll(String dir) {
+        List<ReplayCase> cases = new ArrayList<>();
+        File[] files = new File(dir).listFiles((d, n) -> n.endsWith(EXT));
+        if (files == null) {
+            return cases;
+        }
+        Arrays.sort(files);
+        Gson gson = new Gson();
+        for (File f : files) {
+            try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
+                ReplayCase c = gson.fromJson(r, ReplayCase.class);
+                if (c != null && c.input != null && c.expected != null && c.pages != null) {
+                    cases.add(c);
+                }
+            } catch (IOException | JsonParseException e) {
+                LOG.warn("Cannot read replay case " + f + ": ", e);
+            }
+        }
+        return cases;
+    }
+
+    public static class StoredPage {
+
+        //запрошенный адрес
+        private String url;
+        //адрес после перенаправлений
+        private String location;
+        private String html;
+
+        public StoredPage() {
+        }
+
+        public StoredPage(String url, Page page) {
+            this.url = url;
+            this.location = page.getLocation();
+            this.html = page.getHtml();
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public String getHtml() {
+            return html;
+        }
+    }
+}
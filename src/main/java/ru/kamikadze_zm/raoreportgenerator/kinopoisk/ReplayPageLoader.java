@@ -0,0 +1,57 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Выдает сохраненные страницы по запрошенному адресу, разбор html выполняется при каждой выдаче,
+ * как при настоящей загрузке. Обработчик вызывается в потоке запроса
+ */
+class ReplayPageLoader implements PageLoader {
+
+    private static final Logger LOG = LogManager.getLogger(ReplayPageLoader.class);
+
+    private final Map<String, ReplayCase.StoredPage> pages = new HashMap<>();
+
+    private Consumer<Page> onLoaded;
+    private int loaded;
+    private int missing;
+
+    ReplayPageLoader(List<ReplayCase> cases) {
+        for (ReplayCase c : cases) {
+            for (ReplayCase.StoredPage p : c.getPages()) {
+                pages.put(p.getUrl(), p);
+            }
+        }
+    }
+
+    @Override
+    public void setOnLoaded(Consumer<Page> onLoaded) {
+        this.onLoaded = onLoaded;
+    }
+
+    @Override
+    public void loadPage(String url) throws ParseKinopoiskException {
+        ReplayCase.StoredPage p = pages.get(url);
+        if (p == null) {
+            LOG.warn("No stored page: {}", url);
+            missing++;
+            onLoaded.accept(null);
+            return;
+        }
+        loaded++;
+        onLoaded.accept(new Page(p.getLocation(), p.getHtml()));
+    }
+
+    int getLoaded() {
+        return loaded;
+    }
+
+    int getMissing() {
+        return missing;
+    }
+}
@@ -22,7 +22,7 @@ public class TempUtil {
 
     private final static String FILE_PATH = MainApp.SETTINGS.getOutputDir() + "temp.txt";
 
-    public static void save(MovieInfo movieInfo) {
+    public static synchronized void save(MovieInfo movieInfo) {
         Gson gson = new Gson();
         String json = gson.toJson(movieInfo);
         File file = new File(FILE_PATH);
@@ -6,10 +6,10 @@ import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.CompletableFuture;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import ru.kamikadze_zm.raoreportgenerator.MainApp;
+import ru.kamikadze_zm.raoreportgenerator.kinopoisk.KinopoiskExecutor;
 
 public class HttpClient {
 
@@ -50,11 +50,11 @@ public class HttpClient {
     }
 
     public static void post(RemoteMovieInfo movieInfo) {
-        if (movieInfo.getId() == null) {
+        if (movieInfo.getId() == null || !MainApp.SETTINGS.getServerSettings().isUploadEnabled()) {
             return;
         }
         LOG.info("Sending movie info: {}", movieInfo);
-        CompletableFuture.runAsync(() -> {
+        KinopoiskExecutor.execute(() -> {
             try {
                 INSTANCE.sendPost(movieInfo);
                 LOG.info("Movie info sended, id: {}", movieInfo.getId());
@@ -11,10 +11,15 @@ import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import ru.kamikadze_zm.onair.command.parameter.Duration;
+import ru.kamikadze_zm.raoreportgenerator.DelimitedFile;
 import ru.kamikadze_zm.raoreportgenerator.ExcelException;
+import ru.kamikadze_zm.raoreportgenerator.ExcelSidecar;
 import ru.kamikadze_zm.raoreportgenerator.MainApp;
+import ru.kamikadze_zm.raoreportgenerator.StreamingWorkbook;
+import ru.kamikadze_zm.raoreportgenerator.settings.ExportFormat;
 
 public class ExcelPlayReports {
 
@@ -24,17 +29,30 @@ public class ExcelPlayReports {
     private static final int DATETIME_COLUMN_INDEX = 1;
     private static final int DURATION_COLUMN_INDEX = 2;
 
+    private static final int MAX_COLUMN_WIDTH = 255;
+
     public static List<PlayReportMovie> parse(File file) throws ExcelException {
         String fileName = file.getName();
-        int index = fileName.lastIndexOf(".");
-        String ext = "";
-        if (index > 0) {
-            ext = fileName.substring(index);
+        ExportFormat format = ExportFormat.forFileName(fileName);
+        if (format == null) {
+            throw new ExcelException(ExcelException.getExtMessage(fileName, MainApp.SETTINGS.getExcelExt()));
+        }
+
+        if (format.isDelimited()) {
+            List<String[]> rows;
+            try {
+                rows = DelimitedFile.read(file, format.getDelimiter());
+            } catch (IOException e) {
+                LOG.error("Cannot read delimited play reports file: ", e);
+                throw new ExcelException(ExcelException.getIOMessage(fileName));
+            }
+            //первая строка - заголовки
+            return parseRows(rows.isEmpty() ? rows : rows.subList(1, rows.size()));
         }
 
-        String excelExt = MainApp.SETTINGS.getExcelExt();
-        if (!ext.equalsIgnoreCase(excelExt)) {
-            throw new ExcelException(ExcelException.getExtMessage(fileName, excelExt));
+        List<String[]> sidecarRows = ExcelSidecar.read(file);
+        if (sidecarRows != null) {
+            return parseRows(sidecarRows);
         }
 
         Workbook wb;
@@ -57,12 +75,8 @@ public class ExcelPlayReports {
                     continue;
                 }
 
-                String duration = row.getCell(DURATION_COLUMN_INDEX).getStringCellValue();
-                if (duration.length() > 1) {
-                    duration += ".00";
-                }
-                movies.add(new PlayReportMovie(row.getCell(MOVIE_NAME_COLUMN_INDEX).getStringCellValue(),
-                        new Duration(duration),
+                movies.add(createMovie(row.getCell(MOVIE_NAME_COLUMN_INDEX).getStringCellValue(),
+                        row.getCell(DURATION_COLUMN_INDEX).getStringCellValue(),
                         row.getCell(DATETIME_COLUMN_INDEX).getStringCellValue()));
             } catch (Exception e) {
                 LOG.warn("Excel play report parse exception: ", e);
@@ -71,47 +85,121 @@ public class ExcelPlayReports {
         return movies;
     }
 
+    private static List<PlayReportMovie> parseRows(List<String[]> rows) {
+        List<PlayReportMovie> movies = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            try {
+                if (row[MOVIE_NAME_COLUMN_INDEX].isEmpty()) {
+                    continue;
+                }
+                movies.add(createMovie(row[MOVIE_NAME_COLUMN_INDEX], row[DURATION_COLUMN_INDEX], row[DATETIME_COLUMN_INDEX]));
+            } catch (Exception e) {
+                LOG.warn("Play report row parse exception: ", e);
+            }
+        }
+        return movies;
+    }
+
+    private static PlayReportMovie createMovie(String name, String duration, String dateTime) {
+        if (duration.length() > 1) {
+            duration += ".00";
+        }
+        return new PlayReportMovie(name, new Duration(duration), dateTime);
+    }
+
     public static void save(List<PlayReportMovie> movies) throws ExcelException {
         if (movies.isEmpty()) {
             return;
         }
-        Workbook workbook = new XSSFWorkbook();
+        ExportFormat format = MainApp.SETTINGS.getExportFormat();
+        if (format.isDelimited()) {
+            saveDelimited(movies, format.getDelimiter());
+            return;
+        }
+        SXSSFWorkbook workbook = StreamingWorkbook.create();
         Sheet sheet = workbook.createSheet();
+        int[] maxLength = new int[3];
 
         Row rowHeaders = sheet.createRow(0);
         rowHeaders.createCell(MOVIE_NAME_COLUMN_INDEX).setCellValue("Название");
         rowHeaders.createCell(DATETIME_COLUMN_INDEX).setCellValue("Дата/время выхода");
         rowHeaders.createCell(DURATION_COLUMN_INDEX).setCellValue("Длительность");
+        for (int i = 0; i < maxLength.length; i++) {
+            maxLength[i] = rowHeaders.getCell(i).getStringCellValue().length();
+        }
 
         int rowCount = 1;
+        List<String[]> sidecarRows = new ArrayList<>(movies.size());
 
         for (PlayReportMovie m : movies) {
             try {
                 Row row = sheet.createRow(rowCount);
                 row.createCell(MOVIE_NAME_COLUMN_INDEX).setCellValue(m.getMovieName());
                 row.createCell(DATETIME_COLUMN_INDEX).setCellValue(m.getDateTime());
-                String dur = m.getDuration().toString();
-                if (dur.lastIndexOf(".") != -1) {
-                    dur = dur.substring(0, dur.lastIndexOf("."));
-                }
+                String dur = getDuration(m);
                 row.createCell(DURATION_COLUMN_INDEX).setCellValue(dur);
                 rowCount++;
+
+                String[] sidecarRow = new String[3];
+                sidecarRow[MOVIE_NAME_COLUMN_INDEX] = m.getMovieName();
+                sidecarRow[DATETIME_COLUMN_INDEX] = m.getDateTime();
+                sidecarRow[DURATION_COLUMN_INDEX] = dur;
+                sidecarRows.add(sidecarRow);
+                for (int i = 0; i < maxLength.length; i++) {
+                    if (sidecarRow[i] != null && sidecarRow[i].length() > maxLength[i]) {
+                        maxLength[i] = sidecarRow[i].length();
+                    }
+                }
             } catch (Exception e) {
                 LOG.warn("Cannot write " + m.toString() + " to excel:", e);
+                workbook.dispose();
                 throw new ExcelException("Произошла критическая ошибка");
             }
         }
 
-        sheet.autoSizeColumn(MOVIE_NAME_COLUMN_INDEX);
-        sheet.autoSizeColumn(DATETIME_COLUMN_INDEX);
-        sheet.autoSizeColumn(DURATION_COLUMN_INDEX);
+        //ширина по самому длинному значению вместо autoSizeColumn, который заново измеряет все строки
+        for (int i = 0; i < maxLength.length; i++) {
+            sheet.setColumnWidth(i, Math.min(maxLength[i] + 2, MAX_COLUMN_WIDTH) * 256);
+        }
 
-        File outFile = new File(MainApp.SETTINGS.getPlayReportsPath());
+        String filePath = MainApp.SETTINGS.getPlayReportsPath();
+        File outFile = new File(filePath);
         try (FileOutputStream out = new FileOutputStream(outFile)) {
             workbook.write(out);
         } catch (Exception e) {
             LOG.error("Save play reports to Excel exception: ", e);
             throw new ExcelException("Ошибка сохранения плэй репортов в Excel");
+        } finally {
+            workbook.dispose();
+        }
+        ExcelSidecar.write(filePath, sidecarRows);
+    }
+
+    private static void saveDelimited(List<PlayReportMovie> movies, char delimiter) throws ExcelException {
+        String filePath = MainApp.SETTINGS.getPlayReportsPath();
+        try (DelimitedFile.Writer writer = new DelimitedFile.Writer(filePath, delimiter)) {
+            String[] row = new String[3];
+            row[MOVIE_NAME_COLUMN_INDEX] = "Название";
+            row[DATETIME_COLUMN_INDEX] = "Дата/время выхода";
+            row[DURATION_COLUMN_INDEX] = "Длительность";
+            writer.writeRow(row);
+            for (PlayReportMovie m : movies) {
+                row[MOVIE_NAME_COLUMN_INDEX] = m.getMovieName();
+                row[DATETIME_COLUMN_INDEX] = m.getDateTime();
+                row[DURATION_COLUMN_INDEX] = getDuration(m);
+                writer.writeRow(row);
+            }
+        } catch (IOException e) {
+            LOG.error("Save play reports to " + filePath + " exception: ", e);
+            throw new ExcelException("Ошибка сохранения плэй репортов");
+        }
+    }
+
+    private static String getDuration(PlayReportMovie m) {
+        String dur = m.getDuration().toString();
+        if (dur.lastIndexOf(".") != -1) {
+            dur = dur.substring(0, dur.lastIndexOf("."));
         }
+        return dur;
     }
 }
@@ -0,0 +1,137 @@
+package ru.kamikadze_zm.raoreportgenerator.rao;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сжатие списка выходов одного фильма: выходы в одно и то же время каждый день или каждую неделю
+ * записываются одной строкой с периодом, шаблоном и количеством выходов
+ */
+public class AiringRuns {
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    private static final int MIN_RUN_LENGTH = 3;
+    private static final int DAILY_STEP = 1;
+    private static final int WEEKLY_STEP = 7;
+
+    /**
+     *
+     * @param releases даты/время выходов в формате yyyy-MM-dd HH:mm
+     * @return значения колонки даты/времени выхода, по одному на строку рао отчета
+     */
+    public static List<String> compress(String[] releases) {
+        List<Item> items = new ArrayList<>(releases.length);
+        Map<LocalTime, List<LocalDate>> byTime = new TreeMap<>();
+        for (String release : releases) {
+            String r = release.trim();
+            try {
+                LocalDateTime dt = LocalDateTime.parse(r, DATE_TIME_FORMAT);
+                byTime.computeIfAbsent(dt.toLocalTime(), t -> new ArrayList<>()).add(dt.toLocalDate());
+            } catch (DateTimeParseException e) {
+                items.add(new Item(null, release));
+            }
+        }
+
+        for (Map.Entry<LocalTime, List<LocalDate>> e : byTime.entrySet()) {
+            LocalTime time = e.getKey();
+            List<LocalDate> dates = e.getValue();
+            Collections.sort(dates);
+            List<LocalDate> rest = findDailyRuns(dates, time, items);
+            findWeeklyRuns(rest, time, items);
+        }
+
+        Collections.sort(items);
+        List<String> result = new ArrayList<>(items.size());
+        for (Item i : items) {
+            result.add(i.text);
+        }
+        return result;
+    }
+
+    private static List<LocalDate> findDailyRuns(List<LocalDate> dates, LocalTime time, List<Item> items) {
+        List<LocalDate> rest = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= dates.size(); i++) {
+            if (i < dates.size() && dates.get(i).equals(dates.get(i - 1).plusDays(DAILY_STEP))) {
+                continue;
+            }
+            if (i - start >= MIN_RUN_LENGTH) {
+                items.add(run(dates.get(start), dates.get(i - 1), time, "ежедневно", i - start));
+            } else {
+                rest.addAll(dates.subList(start, i));
+            }
+            start = i;
+        }
+        return rest;
+    }
+
+    private static void findWeeklyRuns(List<LocalDate> dates, LocalTime time, List<Item> items) {
+        Map<LocalDate, Integer> unused = new HashMap<>();
+        for (LocalDate d : dates) {
+            unused.merge(d, 1, Integer::sum);
+        }
+        for (LocalDate d : dates) {
+            if (unused.getOrDefault(d, 0) == 0) {
+                continue;
+            }
+            LocalDate last = d;
+            int count = 1;
+            while (unused.getOrDefault(last.plusDays(WEEKLY_STEP), 0) > 0) {
+                last = last.plusDays(WEEKLY_STEP);
+                count++;
+            }
+            if (count >= MIN_RUN_LENGTH) {
+                for (LocalDate r = d; !r.isAfter(last); r = r.plusDays(WEEKLY_STEP)) {
+                    unused.merge(r, -1, Integer::sum);
+                }
+                items.add(run(d, last, time, "еженедельно", count));
+            } else {
+                unused.merge(d, -1, Integer::sum);
+                items.add(single(d, time));
+            }
+        }
+    }
+
+    private static Item run(LocalDate from, LocalDate to, LocalTime time, String pattern, int count) {
+        String text = DATE_FORMAT.format(from) + " - " + DATE_FORMAT.format(to)
+                + ", " + pattern + " в " + TIME_FORMAT.format(time)
+                + " (выходов: " + count + ")";
+        return new Item(LocalDateTime.of(from, time), text);
+    }
+
+    private static Item single(LocalDate date, LocalTime time) {
+        LocalDateTime dt = LocalDateTime.of(date, time);
+        return new Item(dt, DATE_TIME_FORMAT.format(dt));
+    }
+
+    private static class Item implements Comparable<Item> {
+
+        private final LocalDateTime start;
+        private final String text;
+
+        public Item(LocalDateTime start, String text) {
+            this.start = start;
+            this.text = text;
+        }
+
+        @Override
+        public int compareTo(Item o) {
+            if (start == null || o.start == null) {
+                return start == null ? (o.start == null ? 0 : 1) : -1;
+            }
+            return start.compareTo(o.start);
+        }
+    }
+}
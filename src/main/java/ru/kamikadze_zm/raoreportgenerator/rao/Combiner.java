@@ -4,57 +4,131 @@ import ru.kamikadze_zm.raoreportgenerator.MoviesInfoExcel;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import ru.kamikadze_zm.raoreportgenerator.ExcelException;
+import ru.kamikadze_zm.raoreportgenerator.ExcelExecutor;
 import ru.kamikadze_zm.raoreportgenerator.MainApp;
 import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo.NotFound;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfoSink;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfoWriter;
 import ru.kamikadze_zm.raoreportgenerator.playreports.ExcelPlayReports;
 import ru.kamikadze_zm.raoreportgenerator.playreports.PlayReportMovie;
 
 public class Combiner {
 
+    private static final Logger LOG = LogManager.getLogger(Combiner.class);
+
+    private static final Pattern REPLACE_PATTERN = Pattern.compile("[ _\\-.]");
+
     public static void combine(File moviesInfoFile, File playReportsFile) throws ExcelException {
-        List<MovieInfo> moviesInfo = MoviesInfoExcel.parse(moviesInfoFile);
-        List<PlayReportMovie> playReportMovies = ExcelPlayReports.parse(playReportsFile);
-        combine(moviesInfo, playReportMovies);
+        CompletableFuture<List<MovieInfo>> moviesInfo = ExcelExecutor.supply(() -> MoviesInfoExcel.parse(moviesInfoFile));
+        CompletableFuture<List<PlayReportMovie>> playReportMovies = ExcelExecutor.supply(() -> ExcelPlayReports.parse(playReportsFile));
+        combine(ExcelExecutor.get(moviesInfo), ExcelExecutor.get(playReportMovies));
     }
 
     public static void combine(List<MovieInfo> moviesInfo, List<PlayReportMovie> playReportMovies) throws ExcelException {
         if (moviesInfo.isEmpty() || playReportMovies.isEmpty()) {
             return;
         }
-        List<MovieInfo> sortedMoviesInfo = new ArrayList<>(moviesInfo);
-        Collections.sort(sortedMoviesInfo, MovieInfo::compareForCombiner);
-        List<MovieInfo> combinedInfo = new ArrayList<>();
+        DeltaReport deltaReport = null;
+        try (MovieInfoWriter writer = MoviesInfoExcel.openWriter(MainApp.SETTINGS.getRaoPath(), false)) {
+            if (MainApp.SETTINGS.isRaoDelta()) {
+                deltaReport = new DeltaReport(writer);
+                combine(moviesInfo, playReportMovies, deltaReport);
+            } else {
+                combine(moviesInfo, playReportMovies, writer);
+            }
+            writer.complete();
+        }
+        //отчет об изменениях и снимок сохраняются только после записи полного рао отчета
+        if (deltaReport != null) {
+            deltaReport.save();
+            deltaReport.saveSnapshot();
+        }
+    }
+
+    /**
+     * Объединяет результаты кинопоиска с плей репортами. Строки передаются в {@code sink} по мере формирования,
+     * все выходы одного файла ссылаются на общий объект с информацией о фильме
+     *
+     * @param moviesInfo результаты кинопоиска
+     * @param playReportMovies фильмы из плей репортов
+     * @param sink приемник строк рао отчета
+     * @throws ExcelException в случае ошибки записи строк
+     */
+    public static void combine(List<MovieInfo> moviesInfo, List<PlayReportMovie> playReportMovies, MovieInfoSink sink)
+            throws ExcelException {
+        StpGrid grid = new StpGrid(moviesInfo);
+
+        boolean compact = MainApp.SETTINGS.isRaoCompact();
+        int fuzzyThreshold = MainApp.SETTINGS.getFuzzyMatchThreshold();
+        TrigramIndex trigramIndex = null;
+
+        MatchCache matchCache = MatchCache.load(grid.names);
+        Map<MovieInfo, MovieInfo> moviesByIdentity = MatchCache.indexByIdentity(moviesInfo);
+        Map<String, MovieInfo> moviesByLink = MatchCache.indexByLink(moviesInfo);
 
-        String replaceRegEx = "[ _\\-.]";
         final String message = "Не найден в сетке СТП";
+        long start = System.nanoTime();
+        int fuzzyCount = 0;
         MovieInfo founded;
+        boolean fuzzy;
         for (PlayReportMovie prm : playReportMovies) {
-            String reportMovieName = prm.getMovieName().replaceAll(replaceRegEx, "").toLowerCase();
-            String stpFilmName;
-            founded = null;
-            for (MovieInfo mi : sortedMoviesInfo) {
-                stpFilmName = mi.getName().replaceAll(replaceRegEx, "").toLowerCase();
-                if (reportMovieName.startsWith(stpFilmName)) {
-                    founded = mi;
-                    break;
+            String reportMovieName = normalizeName(prm.getMovieName());
+            fuzzy = false;
+            founded = matchCache.find(reportMovieName, moviesByIdentity, moviesByLink);
+            if (founded == null) {
+                founded = grid.findByPrefix(reportMovieName);
+            }
+            if (founded == null && fuzzyThreshold != -1) {
+                if (trigramIndex == null) {
+                    trigramIndex = new TrigramIndex(grid.movies, grid.names, fuzzyThreshold / 100.0);
+                }
+                founded = trigramIndex.find(reportMovieName);
+                if (founded != null) {
+                    fuzzy = true;
+                    fuzzyCount++;
+                    LOG.info("Fuzzy match: {} -> {}", prm.getMovieName(), founded.getName());
+                }
+            }
+            if (founded != null) {
+                matchCache.put(reportMovieName, founded, fuzzy);
+            }
+            MovieInfo combined;
+            if (founded != null) {
+                String name = prm.getMovieName();
+                if (founded.getOriginalName() != null && !founded.getOriginalName().isEmpty()) {
+                    name = name + " (" + founded.getOriginalName() + ")";
+                }
+                combined = getCombinedMovie(founded, prm, name);
+                if (fuzzy) {
+                    combined.addNotFound(NotFound.FUZZY);
                 }
+            } else {
+                combined = new MovieInfo(prm.getMovieName(), null, prm.getDuration().toString(), message);
             }
             String[] releases = prm.getDateTime().split(",");
-            for (String date : releases) {
-                if (founded != null) {
-                    String name = prm.getMovieName();
-                    if (founded.getOriginalName() != null && !founded.getOriginalName().isEmpty()) {
-                        name = name + " (" + founded.getOriginalName() + ")";
-                    }
-                    combinedInfo.add(getCombinedMovie(founded, prm, name, date));
-                } else {
-                    combinedInfo.add(new MovieInfo(prm.getMovieName(), date, prm.getDuration().toString(), message));
+            if (compact) {
+                for (String run : AiringRuns.compress(releases)) {
+                    sink.accept(combined, run);
+                }
+            } else {
+                for (String date : releases) {
+                    sink.accept(combined, date);
                 }
             }
         }
-        MoviesInfoExcel.save(combinedInfo, MainApp.SETTINGS.getRaoPath());
+        LOG.info("Combined {} play report films in {} ms, fuzzy matches: {}",
+                playReportMovies.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), fuzzyCount);
+        matchCache.save();
     }
 
     public static void combineFilms(List<MovieInfo> moviesInfo, File playReportsFile) throws ExcelException {
@@ -67,7 +141,31 @@ public class Combiner {
         combine(moviesInfo, playReportMovies);
     }
 
-    private static MovieInfo getCombinedMovie(MovieInfo mi, PlayReportMovie prm, String name, String dateTime) {
+    /**
+     * Считает выходы фильмов СТП сетки по плей репортам. Фильм плей репорта сопоставляется
+     * так же, как при объединении, по началу названия (без кэша сопоставлений и нечеткого поиска)
+     *
+     * @param moviesInfo фильмы СТП сетки
+     * @param playReportMovies фильмы из плей репортов
+     * @return число выходов фильмов, которые есть в плей репортах
+     */
+    public static Map<MovieInfo, Integer> countAirings(List<MovieInfo> moviesInfo, List<PlayReportMovie> playReportMovies) {
+        StpGrid grid = new StpGrid(moviesInfo);
+        Map<MovieInfo, Integer> airings = new HashMap<>();
+        for (PlayReportMovie prm : playReportMovies) {
+            MovieInfo founded = grid.findByPrefix(normalizeName(prm.getMovieName()));
+            if (founded != null) {
+                airings.merge(founded, prm.getDateTime().split(",").length, Integer::sum);
+            }
+        }
+        return airings;
+    }
+
+    private static String normalizeName(String name) {
+        return REPLACE_PATTERN.matcher(name).replaceAll("").toLowerCase();
+    }
+
+    private static MovieInfo getCombinedMovie(MovieInfo mi, PlayReportMovie prm, String name) {
         MovieInfo cmi = new MovieInfo(
                 name,
                 mi.getGenre(),
@@ -77,11 +175,43 @@ public class Combiner {
                 mi.getComposer(),
                 mi.getStudio(),
                 prm.getDuration().toString(),
-                dateTime,
+                null,
                 mi.getNotFound(),
                 mi.getLink(),
                 mi.getKinopoiskName());
         cmi.setStpName(mi.getName());
         return cmi;
     }
+
+    /**
+     * Фильмы СТП сетки в порядке сопоставления (более длинные названия раньше) с нормализованными названиями
+     */
+    private static class StpGrid {
+
+        private final List<MovieInfo> movies;
+        private final List<String> names;
+
+        public StpGrid(List<MovieInfo> moviesInfo) {
+            this.movies = new ArrayList<>(moviesInfo);
+            Collections.sort(movies, MovieInfo::compareForCombiner);
+            this.names = new ArrayList<>(movies.size());
+            for (MovieInfo mi : movies) {
+                names.add(normalizeName(mi.getName()));
+            }
+        }
+
+        /**
+         *
+         * @param reportName нормализованное название из плей репорта
+         * @return первый фильм, название которого является началом {@code reportName}, или {@code null}
+         */
+        public MovieInfo findByPrefix(String reportName) {
+            for (int i = 0; i < names.size(); i++) {
+                if (reportName.startsWith(names.get(i))) {
+                    return movies.get(i);
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,211 @@
+package ru.kamikadze_zm.raoreportgenerator.rao;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import ru.kamikadze_zm.raoreportgenerator.ExcelException;
+import ru.kamikadze_zm.raoreportgenerator.MainApp;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfoSink;
+import ru.kamikadze_zm.raoreportgenerator.MoviesInfoExcel;
+import ru.kamikadze_zm.raoreportgenerator.StreamingWorkbook;
+import ru.kamikadze_zm.raoreportgenerator.settings.Settings;
+
+/**
+ * Отчет об изменениях рао отчета относительно предыдущего периода: новые, измененные и удаленные названия.
+ * Строки передаются дальше без изменений, по пути запоминается по одной записи на название.
+ * Базой служит предыдущий рао отчет (если указан в настройках) или снимок последнего объединения
+ */
+public class DeltaReport implements MovieInfoSink {
+
+    private static final Logger LOG = LogManager.getLogger(DeltaReport.class);
+
+    private static final String SNAPSHOT_PATH = Settings.APP_DIR + "rao-snapshot.json";
+
+    private static final Map<String, Function<MovieInfo, String>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("Название в СТП сетке", MovieInfo::getStpName);
+        FIELDS.put("Год", MovieInfo::getYear);
+        FIELDS.put("Страна", MovieInfo::getCountry);
+        FIELDS.put("Жанр", MovieInfo::getGenre);
+        FIELDS.put("Киностудия", MovieInfo::getStudio);
+        FIELDS.put("Режиссер", MovieInfo::getDirector);
+        FIELDS.put("Композитор", MovieInfo::getComposer);
+        FIELDS.put("Длительность", MovieInfo::getDuration);
+        FIELDS.put("Ссылка", MovieInfo::getLink);
+        FIELDS.put("Название на кинопоиске", MovieInfo::getKinopoiskName);
+        FIELDS.put("Не найдено", MovieInfo::getNotFound);
+    }
+
+    private final MovieInfoSink sink;
+    private final Map<String, MovieInfo> titles = new LinkedHashMap<>();
+    private MovieInfo last;
+
+    /**
+     *
+     * @param sink приемник строк полного рао отчета
+     */
+    public DeltaReport(MovieInfoSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void accept(MovieInfo movie, String releaseDateTime) throws ExcelException {
+        if (movie != last) {
+            last = movie;
+            titles.putIfAbsent(movie.getName(), movie);
+        }
+        sink.accept(movie, releaseDateTime);
+    }
+
+    /**
+     * Сравнивает названия текущего периода с базой и сохраняет отчет об изменениях.
+     * Вызывается после записи полного рао отчета, новый снимок сохраняется отдельно ({@link #saveSnapshot()})
+     *
+     * @throws ExcelException в случае ошибки чтения базы или сохранения отчета
+     */
+    public void save() throws ExcelException {
+        Map<String, MovieInfo> baseline = loadBaseline();
+
+        SXSSFWorkbook workbook = StreamingWorkbook.create();
+        Sheet sheet = workbook.createSheet();
+        Row headersRow = sheet.createRow(0);
+        int column = 0;
+        headersRow.createCell(column++).setCellValue("Изменение");
+        headersRow.createCell(column++).setCellValue("Название");
+        for (String field : FIELDS.keySet()) {
+            headersRow.createCell(column++).setCellValue(field);
+        }
+        headersRow.createCell(column).setCellValue("Измененные поля");
+
+        int rowCount = 1;
+        int added = 0;
+        int changed = 0;
+        for (MovieInfo m : titles.values()) {
+            MovieInfo old = baseline.remove(m.getName());
+            if (old == null) {
+                writeRow(sheet.createRow(rowCount++), "Новый", m, "");
+                added++;
+                continue;
+            }
+            String changedFields = getChangedFields(old, m);
+            if (!changedFields.isEmpty()) {
+                writeRow(sheet.createRow(rowCount++), "Изменен", m, changedFields);
+                changed++;
+            }
+        }
+        for (MovieInfo m : baseline.values()) {
+            writeRow(sheet.createRow(rowCount++), "Удален", m, "");
+        }
+        LOG.info("Rao delta: new = {}, changed = {}, removed = {}", added, changed, baseline.size());
+
+        for (int i = 0; i <= column; i++) {
+            sheet.setColumnWidth(i, 17 * 256);
+        }
+
+        try (FileOutputStream out = new FileOutputStream(new File(MainApp.SETTINGS.getRaoDeltaPath()))) {
+            workbook.write(out);
+        } catch (Exception e) {
+            LOG.warn("Save rao delta to Excel exception: ", e);
+            throw new ExcelException("Ошибка сохранения отчета об изменениях в Excel");
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    private void writeRow(Row row, String change, MovieInfo m, String changedFields) {
+        int column = 0;
+        row.createCell(column++).setCellValue(change);
+        row.createCell(column++).setCellValue(m.getName());
+        for (Function<MovieInfo, String> getter : FIELDS.values()) {
+            row.createCell(column++).setCellValue(getter.apply(m));
+        }
+        row.createCell(column).setCellValue(changedFields);
+    }
+
+    private String getChangedFields(MovieInfo old, MovieInfo current) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Function<MovieInfo, String>> e : FIELDS.entrySet()) {
+            String o = e.getValue().apply(old);
+            String c = e.getValue().apply(current);
+            if (!Objects.equals(o == null ? "" : o, c == null ? "" : c)) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(e.getKey());
+            }
+        }
+        return sb.toString();
+    }
+
+    private Map<String, MovieInfo> loadBaseline() throws ExcelException {
+        List<MovieInfo> movies;
+        String baselinePath = MainApp.SETTINGS.getRaoBaselinePath();
+        if (!baselinePath.isEmpty()) {
+            movies = MoviesInfoExcel.parseRao(new File(baselinePath));
+        } else {
+            movies = loadSnapshot();
+        }
+        Map<String, MovieInfo> baseline = new HashMap<>(movies.size() * 2);
+        for (MovieInfo m : movies) {
+            baseline.putIfAbsent(m.getName(), m);
+        }
+        return baseline;
+    }
+
+    private List<MovieInfo> loadSnapshot() {
+        File file = new File(SNAPSHOT_PATH);
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            List<MovieInfo> movies = new Gson().fromJson(r, new TypeToken<List<MovieInfo>>() {
+            }.getType());
+            return movies != null ? movies : new ArrayList<>();
+        } catch (IOException | JsonParseException e) {
+            LOG.warn("Cannot read rao snapshot: ", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Сохраняет названия текущего периода как базу следующего отчета об изменениях.
+     * Если база указана в настройках, снимок не перезаписывается
+     */
+    public void saveSnapshot() {
+        if (!MainApp.SETTINGS.getRaoBaselinePath().isEmpty()) {
+            return;
+        }
+        File file = new File(SNAPSHOT_PATH);
+        if (!file.exists()) {
+            file.getParentFile().mkdirs();
+        }
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            new Gson().toJson(new ArrayList<>(titles.values()), w);
+        } catch (IOException e) {
+            LOG.warn("Cannot write rao snapshot: ", e);
+        }
+    }
+}
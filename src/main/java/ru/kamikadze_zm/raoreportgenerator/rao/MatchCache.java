@@ -0,0 +1,251 @@
+package ru.kamikadze_zm.raoreportgenerator.rao;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+import ru.kamikadze_zm.raoreportgenerator.settings.Settings;
+
+/**
+ * Сохраняемый между запусками кэш соответствий нормализованных названий файлов плей репортов
+ * фильмам из СТП сетки. Записи с {@code manual = true} добавляются вручную (редактированием файла)
+ * и никогда не перезаписываются автоматически. Нечеткие совпадения не сохраняются, чтобы при появлении
+ * в сетке подходящего по началу названия фильма сопоставление шло по нему. Автоматические записи сохраняются
+ * вместе с отпечатком нормализованных названий сетки и отбрасываются, если сетка изменилась, так как
+ * сопоставление по началу названия зависит от всех названий сетки. Если файл не удалось прочитать,
+ * он не перезаписывается, чтобы не потерять ручные записи
+ */
+public class MatchCache {
+
+    private static final Logger LOG = LogManager.getLogger(MatchCache.class);
+
+    private static final String FILE_PATH = Settings.APP_DIR + "match-cache.json";
+
+    private final Map<String, Entry> entries;
+    private final String grid;
+    private final boolean loadFailed;
+    private boolean changed;
+
+    private MatchCache(Map<String, Entry> entries, String grid, boolean loadFailed) {
+        this.entries = entries;
+        this.grid = grid;
+        this.loadFailed = loadFailed;
+    }
+
+    /**
+     *
+     * @param stpFilmNames нормализованные названия текущей СТП сетки в порядке сопоставления
+     * @return кэш, в котором автоматические записи оставлены, только если они получены для той же сетки
+     */
+    public static MatchCache load(List<String> stpFilmNames) {
+        String grid = getFingerprint(stpFilmNames);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        String savedGrid = null;
+        boolean loadFailed = false;
+        File file = new File(FILE_PATH);
+        if (file.exists()) {
+            try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                JsonElement root = new JsonParser().parse(r);
+                JsonElement list = root;
+                if (root.isJsonObject()) {
+                    JsonObject o = root.getAsJsonObject();
+                    if (o.has("grid") && !o.get("grid").isJsonNull()) {
+                        savedGrid = o.get("grid").getAsString();
+                    }
+                    list = o.get("entries");
+                }
+                List<Entry> loaded = new Gson().fromJson(list, new TypeToken<List<Entry>>() {
+                }.getType());
+                if (loaded != null) {
+                    for (Entry e : loaded) {
+                        if (e.file != null && e.name != null) {
+                            entries.put(e.file, e);
+                        }
+                    }
+                }
+            } catch (IOException | JsonParseException | IllegalStateException e) {
+                LOG.warn("Cannot read match cache, it will not be overwritten: ", e);
+                loadFailed = true;
+            }
+        }
+        MatchCache cache = new MatchCache(entries, grid, loadFailed);
+        if (grid == null || !grid.equals(savedGrid)) {
+            //сетка изменилась: автоматические сопоставления могли измениться, остаются только ручные
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (!it.next().manual) {
+                    it.remove();
+                    cache.changed = true;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     *
+     * @param reportName нормализованное название файла из плей репорта
+     * @param movies фильмы текущей СТП сетки (ключ - название, страна и год)
+     * @param moviesByLink фильмы текущей СТП сетки по ссылке на кинопоиск
+     * @return фильм из текущей сетки или {@code null}, если название не сопоставлялось или фильма нет в сетке
+     */
+    public MovieInfo find(String reportName, Map<MovieInfo, MovieInfo> movies, Map<String, MovieInfo> moviesByLink) {
+        Entry e = entries.get(reportName);
+        if (e == null) {
+            return null;
+        }
+        MovieInfo movie = movies.get(new MovieInfo(e.name, null, e.country, e.year, null, null, null));
+        if (movie == null && e.link != null && !e.link.isEmpty()) {
+            movie = moviesByLink.get(e.link);
+        }
+        return movie;
+    }
+
+    public void put(String reportName, MovieInfo movie, boolean fuzzy) {
+        Entry old = entries.get(reportName);
+        if (old != null && (old.manual || (!fuzzy && old.isSame(movie)))) {
+            return;
+        }
+        if (fuzzy) {
+            if (old != null) {
+                entries.remove(reportName);
+                changed = true;
+            }
+            return;
+        }
+        entries.put(reportName, new Entry(reportName, movie));
+        changed = true;
+    }
+
+    public void save() {
+        if (!changed) {
+            return;
+        }
+        if (loadFailed || grid == null) {
+            LOG.warn("Match cache is not saved because it could not be read: {}", FILE_PATH);
+            return;
+        }
+        File file = new File(FILE_PATH);
+        if (!file.exists()) {
+            file.getParentFile().mkdirs();
+        }
+        File temp = new File(FILE_PATH + ".tmp");
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                gson.toJson(new CacheFile(grid, new ArrayList<>(entries.values())), w);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            changed = false;
+        } catch (IOException e) {
+            LOG.warn("Cannot write match cache: ", e);
+            temp.delete();
+        }
+    }
+
+    public static Map<MovieInfo, MovieInfo> indexByIdentity(List<MovieInfo> movies) {
+        Map<MovieInfo, MovieInfo> map = new HashMap<>(movies.size() * 2);
+        for (MovieInfo m : movies) {
+            map.putIfAbsent(m, m);
+        }
+        return map;
+    }
+
+    public static Map<String, MovieInfo> indexByLink(List<MovieInfo> movies) {
+        Map<String, MovieInfo> map = new HashMap<>(movies.size() * 2);
+        for (MovieInfo m : movies) {
+            if (m.getLink() != null && !m.getLink().isEmpty()) {
+                map.putIfAbsent(m.getLink(), m);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Отпечаток названий сетки: сопоставление по началу названия зависит от всех названий и их порядка
+     *
+     * @return SHA-256 названий или {@code null}, если его не удалось вычислить
+     */
+    private static String getFingerprint(List<String> stpFilmNames) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String name : stpFilmNames) {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            StringBuilder fingerprint = new StringBuilder();
+            for (byte b : digest.digest()) {
+                fingerprint.append(String.format("%02x", b));
+            }
+            return fingerprint.toString();
+        } catch (NoSuchAlgorithmException e) {
+            LOG.warn("Cannot calculate stp grid hash: ", e);
+            return null;
+        }
+    }
+
+    private static class CacheFile {
+
+        private final String grid;
+        private final List<Entry> entries;
+
+        public CacheFile(String grid, List<Entry> entries) {
+            this.grid = grid;
+            this.entries = entries;
+        }
+    }
+
+    private static class Entry {
+
+        private String file;
+        private String name;
+        private String country;
+        private String year;
+        private String link;
+        private boolean manual;
+
+        public Entry() {
+        }
+
+        public Entry(String file, MovieInfo movie) {
+            this.file = file;
+            this.name = movie.getName();
+            this.country = movie.getCountry();
+            this.year = movie.getYear();
+            this.link = movie.getLink();
+        }
+
+        private boolean isSame(MovieInfo movie) {
+            return name.equals(movie.getName())
+                    && Objects.equals(country, movie.getCountry())
+                    && Objects.equals(year, movie.getYear())
+                    && Objects.equals(link, movie.getLink());
+        }
+    }
+}
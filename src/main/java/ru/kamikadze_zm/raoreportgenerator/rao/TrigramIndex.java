@@ -0,0 +1,207 @@
+package ru.kamikadze_zm.raoreportgenerator.rao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+
+/**
+ * Триграммный инвертированный индекс по названиям из СТП сетки для нечеткого поиска
+ * названий плей репортов, которые не удалось сопоставить по префиксу.
+ * Поиск использует общие рабочие массивы, поэтому индекс нельзя использовать из нескольких потоков
+ */
+public class TrigramIndex {
+
+    private static final int MAX_CANDIDATES = 8;
+
+    private final List<MovieInfo> movies;
+    private final String[] names;
+    private final int[] trigramCounts;
+    private final Map<String, int[]> postings;
+    private final double threshold;
+
+    //рабочие массивы поиска: число общих триграмм, затронутые названия и лучшие кандидаты
+    private final int[] shared;
+    private final int[] touched;
+    private final int[] candidates = new int[MAX_CANDIDATES];
+
+    /**
+     *
+     * @param movies фильмы из СТП сетки
+     * @param normalizedNames нормализованные названия фильмов (в том же порядке)
+     * @param threshold минимальное сходство (от 0 до 1)
+     */
+    public TrigramIndex(List<MovieInfo> movies, List<String> normalizedNames, double threshold) {
+        this.movies = movies;
+        this.names = normalizedNames.toArray(new String[normalizedNames.size()]);
+        this.trigramCounts = new int[names.length];
+        this.threshold = threshold;
+        this.shared = new int[names.length];
+        this.touched = new int[names.length];
+
+        Map<String, List<Integer>> lists = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            Set<String> trigrams = trigrams(names[i]);
+            trigramCounts[i] = trigrams.size();
+            for (String t : trigrams) {
+                List<Integer> l = lists.get(t);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    lists.put(t, l);
+                }
+                l.add(i);
+            }
+        }
+        this.postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<String, List<Integer>> e : lists.entrySet()) {
+            List<Integer> l = e.getValue();
+            int[] ids = new int[l.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = l.get(i);
+            }
+            postings.put(e.getKey(), ids);
+        }
+    }
+
+    /**
+     *
+     * @param reportName нормализованное название из плей репорта
+     * @return наиболее похожий фильм или {@code null}, если сходство ниже порога
+     */
+    public MovieInfo find(String reportName) {
+        if (names.length == 0 || reportName.isEmpty()) {
+            return null;
+        }
+        int touchedCount = 0;
+        for (String t : trigrams(reportName)) {
+            int[] ids = postings.get(t);
+            if (ids == null) {
+                continue;
+            }
+            for (int id : ids) {
+                if (shared[id]++ == 0) {
+                    touched[touchedCount++] = id;
+                }
+            }
+        }
+
+        //лемма о q-граммах: k правок уничтожают не более 3k триграмм
+        int candidateCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touched[i];
+            int maxDistance = getMaxDistance(names[id]);
+            if (shared[id] >= trigramCounts[id] - 3 * maxDistance) {
+                candidateCount = addCandidate(id, candidateCount);
+            }
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            shared[touched[i]] = 0;
+        }
+
+        MovieInfo best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < candidateCount; i++) {
+            int id = candidates[i];
+            int maxDistance = getMaxDistance(names[id]);
+            int distance = prefixDistance(names[id], reportName, Math.min(maxDistance, bestDistance - 1));
+            if (distance >= 0 && distance < bestDistance) {
+                bestDistance = distance;
+                best = movies.get(id);
+                if (distance == 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Вставляет название в список лучших кандидатов, упорядоченный по доле общих триграмм.
+     * При равной доле раньше остается кандидат, найденный первым
+     *
+     * @return новое число кандидатов
+     */
+    private int addCandidate(int id, int count) {
+        int pos = count;
+        while (pos > 0 && isBetter(id, candidates[pos - 1])) {
+            pos--;
+        }
+        if (pos == MAX_CANDIDATES) {
+            return count;
+        }
+        int last = Math.min(count, MAX_CANDIDATES - 1);
+        System.arraycopy(candidates, pos, candidates, pos + 1, last - pos);
+        candidates[pos] = id;
+        return last + 1;
+    }
+
+    private boolean isBetter(int a, int b) {
+        return (double) shared[a] / trigramCounts[a] > (double) shared[b] / trigramCounts[b];
+    }
+
+    private int getMaxDistance(String name) {
+        return (int) Math.floor(name.length() * (1 - threshold));
+    }
+
+    /**
+     * Расстояние Левенштейна между {@code pattern} и наиболее похожим префиксом {@code text},
+     * вычисляемое только в полосе шириной {@code maxDistance}
+     *
+     * @return расстояние или -1, если оно больше {@code maxDistance}
+     */
+    static int prefixDistance(String pattern, String text, int maxDistance) {
+        if (maxDistance < 0) {
+            return -1;
+        }
+        int m = pattern.length();
+        int n = Math.min(text.length(), m + maxDistance);
+        int inf = maxDistance + 1;
+        int[] prev = new int[n + 1];
+        int[] cur = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            prev[j] = j <= maxDistance ? j : inf;
+        }
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(n, i + maxDistance);
+            Arrays.fill(cur, inf);
+            cur[0] = i <= maxDistance ? i : inf;
+            int rowMin = cur[0];
+            char pc = pattern.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = pc == text.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                cur[j] = Math.min(v, inf);
+                if (cur[j] < rowMin) {
+                    rowMin = cur[j];
+                }
+            }
+            if (rowMin > maxDistance) {
+                return -1;
+            }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        int result = inf;
+        for (int j = Math.max(0, m - maxDistance); j <= n; j++) {
+            if (prev[j] < result) {
+                result = prev[j];
+            }
+        }
+        return result > maxDistance ? -1 : result;
+    }
+
+    private static Set<String> trigrams(String s) {
+        String padded = "  " + s;
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.kamikadze_zm.raoreportgenerator.settings;
+
+/**
+ * Формат файлов с результатами (кинопоиск, плей репорты, рао отчет)
+ */
+public enum ExportFormat {
+    XLSX("Excel (.xlsx)", ".xlsx", '\0'),
+    CSV("CSV, через запятую (.csv)", ".csv", ','),
+    TSV("TSV, через табуляцию (.tsv)", ".tsv", '\t');
+
+    private final String title;
+    private final String ext;
+    private final char delimiter;
+
+    ExportFormat(String title, String ext, char delimiter) {
+        this.title = title;
+        this.ext = ext;
+        this.delimiter = delimiter;
+    }
+
+    public String getExt() {
+        return ext;
+    }
+
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     *
+     * @return {@code true} для текстовых форматов с разделителем
+     */
+    public boolean isDelimited() {
+        return this != XLSX;
+    }
+
+    /**
+     *
+     * @param fileName имя файла
+     * @return формат по расширению файла или {@code null}, если расширение не поддерживается
+     */
+    public static ExportFormat forFileName(String fileName) {
+        int index = fileName.lastIndexOf(".");
+        if (index <= 0) {
+            return null;
+        }
+        String ext = fileName.substring(index);
+        for (ExportFormat f : values()) {
+            if (f.ext.equalsIgnoreCase(ext)) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
@@ -31,6 +31,14 @@ public class ServerSettings implements Serializable {
         this.serverPath = serverPath;
     }
 
+    /**
+     *
+     * @return отправлять ли страницы фильмов на сервер (адрес сервера не пустой)
+     */
+    public boolean isUploadEnabled() {
+        return serverPath != null && !serverPath.trim().isEmpty() && !serverPath.trim().equals("/");
+    }
+
     public String getSecretKey() {
         return secretKey;
     }
@@ -31,11 +31,23 @@ public class Settings implements Serializable {
     private static final String DEFAULT_MOVIES_INFO_FILE = "movies-info";
     private static final String DEFAULT_PLAYREPORTS_FILE = "play-reports";
     private static final String DEFAULT_RAO_FILE = "rao";
+    private static final String RAO_DELTA_SUFFIX = "-delta";
 
     private static final String DATE = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss_").format(new Date());
 
     private static final String EXCEL_EXT = ".xlsx";
 
+    private static final int DEFAULT_FUZZY_MATCH_THRESHOLD = 80;
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    private static final int MAX_COMPRESSION_LEVEL = 9;
+    private static final int DEFAULT_KINOPOISK_CACHE_DAYS = 180;
+    private static final int DEFAULT_KINOPOISK_NEGATIVE_CACHE_DAYS = 30;
+    private static final int DEFAULT_KINOPOISK_SESSIONS = 1;
+    private static final int DEFAULT_KINOPOISK_REQUESTS_PER_MINUTE = 3;
+    private static final int DEFAULT_KINOPOISK_BURST = 1;
+    private static final int DEFAULT_KINOPOISK_MIN_DELAY = 5;
+    private static final int DEFAULT_KINOPOISK_MAX_DELAY = 300;
+
     private String inputDir;
     private String outputDir;
     private String moviesInfoFile;
@@ -44,6 +56,24 @@ public class Settings implements Serializable {
     private transient List<String> playReportsExclusions;
     private StpSettings stpSettings;
     private ServerSettings serverSettings;
+    private Integer fuzzyMatchThreshold;
+    private Boolean raoDelta;
+    private String raoBaselinePath;
+    private Boolean raoCompact;
+    private ExportFormat exportFormat;
+    private Integer compressionLevel;
+    private Boolean parallelCompression;
+    private Boolean kinopoiskHttp;
+    private Integer kinopoiskCacheDays;
+    private Integer kinopoiskNegativeCacheDays;
+    private Integer kinopoiskSessions;
+    private Integer kinopoiskRequestsPerMinute;
+    private Integer kinopoiskBurst;
+    private Integer kinopoiskMinDelay;
+    private Integer kinopoiskMaxDelay;
+    private Boolean kinopoiskStudios;
+    private String kinopoiskReplayDir;
+    private Boolean kinopoiskAiringOrder;
 
     public Settings() {
     }
@@ -116,7 +146,7 @@ public class Settings implements Serializable {
     }
 
     public String getMoviesInfoPath() {
-        return getOutputDir() + DATE + getMoviesInfoFile() + EXCEL_EXT;
+        return getOutputDir() + DATE + getMoviesInfoFile() + getExportFormat().getExt();
     }
 
     public void setMoviesInfoFile(String moviesInfoFile) {
@@ -131,7 +161,7 @@ public class Settings implements Serializable {
     }
 
     public String getPlayReportsPath() {
-        return getOutputDir() + DATE + getPlayReportsFile() + EXCEL_EXT;
+        return getOutputDir() + DATE + getPlayReportsFile() + getExportFormat().getExt();
     }
 
     public void setPlayReportsFile(String playReportsFile) {
@@ -146,7 +176,11 @@ public class Settings implements Serializable {
     }
 
     public String getRaoPath() {
-        return getOutputDir() + DATE + getRaoFile() + EXCEL_EXT;
+        return getOutputDir() + DATE + getRaoFile() + getExportFormat().getExt();
+    }
+
+    public String getRaoDeltaPath() {
+        return getOutputDir() + DATE + getRaoFile() + RAO_DELTA_SUFFIX + EXCEL_EXT;
     }
 
     public void setRaoFile(String raoFile) {
@@ -186,6 +220,277 @@ public class Settings implements Serializable {
         this.serverSettings = serverSettings;
     }
 
+    /**
+     *
+     * @return минимальное сходство в процентах для нечеткого сопоставления плей репортов с СТП сеткой (-1 - отключено)
+     */
+    public int getFuzzyMatchThreshold() {
+        if (fuzzyMatchThreshold != null) {
+            return fuzzyMatchThreshold;
+        }
+        return DEFAULT_FUZZY_MATCH_THRESHOLD;
+    }
+
+    public void setFuzzyMatchThreshold(int fuzzyMatchThreshold) {
+        this.fuzzyMatchThreshold = fuzzyMatchThreshold;
+    }
+
+    /**
+     *
+     * @return формировать ли отчет об изменениях рао отчета относительно предыдущего периода
+     */
+    public boolean isRaoDelta() {
+        if (raoDelta != null) {
+            return raoDelta;
+        }
+        return false;
+    }
+
+    public void setRaoDelta(boolean raoDelta) {
+        this.raoDelta = raoDelta;
+    }
+
+    /**
+     *
+     * @return путь к рао отчету предыдущего периода (пустая строка - снимок последнего объединения)
+     */
+    public String getRaoBaselinePath() {
+        if (raoBaselinePath != null) {
+            return raoBaselinePath;
+        }
+        return "";
+    }
+
+    public void setRaoBaselinePath(String raoBaselinePath) {
+        this.raoBaselinePath = raoBaselinePath;
+    }
+
+    /**
+     *
+     * @return записывать ли регулярные выходы (ежедневно/еженедельно в одно время) одной строкой рао отчета
+     */
+    public boolean isRaoCompact() {
+        if (raoCompact != null) {
+            return raoCompact;
+        }
+        return false;
+    }
+
+    public void setRaoCompact(boolean raoCompact) {
+        this.raoCompact = raoCompact;
+    }
+
+    /**
+     *
+     * @return формат файлов с результатами (отчет об изменениях всегда сохраняется в excel)
+     */
+    public ExportFormat getExportFormat() {
+        if (exportFormat != null) {
+            return exportFormat;
+        }
+        return ExportFormat.XLSX;
+    }
+
+    public void setExportFormat(ExportFormat exportFormat) {
+        this.exportFormat = exportFormat;
+    }
+
+    /**
+     *
+     * @return степень сжатия excel файлов от 0 (без сжатия) до 9 (максимальное)
+     */
+    public int getCompressionLevel() {
+        if (compressionLevel != null) {
+            return Math.max(0, Math.min(MAX_COMPRESSION_LEVEL, compressionLevel));
+        }
+        return DEFAULT_COMPRESSION_LEVEL;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     *
+     * @return сжимать excel файлы параллельно блоками, иначе обычным {@link java.util.zip.ZipOutputStream}
+     */
+    public boolean isParallelCompression() {
+        if (parallelCompression != null) {
+            return parallelCompression;
+        }
+        return false;
+    }
+
+    public void setParallelCompression(boolean parallelCompression) {
+        this.parallelCompression = parallelCompression;
+    }
+
+    /**
+     *
+     * @return загружать ли страницы кинопоиска http запросами вместо встроенного браузера
+     */
+    public boolean isKinopoiskHttp() {
+        if (kinopoiskHttp != null) {
+            return kinopoiskHttp;
+        }
+        return false;
+    }
+
+    public void setKinopoiskHttp(boolean kinopoiskHttp) {
+        this.kinopoiskHttp = kinopoiskHttp;
+    }
+
+    /**
+     *
+     * @return сколько дней хранить в кэше найденные на кинопоиске фильмы (-1 - кэш отключен)
+     */
+    public int getKinopoiskCacheDays() {
+        if (kinopoiskCacheDays != null) {
+            return kinopoiskCacheDays;
+        }
+        return DEFAULT_KINOPOISK_CACHE_DAYS;
+    }
+
+    public void setKinopoiskCacheDays(int kinopoiskCacheDays) {
+        this.kinopoiskCacheDays = kinopoiskCacheDays;
+    }
+
+    /**
+     *
+     * @return сколько дней хранить в кэше ненайденные на кинопоиске фильмы (-1 - не хранить)
+     */
+    public int getKinopoiskNegativeCacheDays() {
+        if (kinopoiskNegativeCacheDays != null) {
+            return kinopoiskNegativeCacheDays;
+        }
+        return DEFAULT_KINOPOISK_NEGATIVE_CACHE_DAYS;
+    }
+
+    public void setKinopoiskNegativeCacheDays(int kinopoiskNegativeCacheDays) {
+        this.kinopoiskNegativeCacheDays = kinopoiskNegativeCacheDays;
+    }
+
+    /**
+     *
+     * @return сколько сессий одновременно загружают страницы кинопоиска
+     */
+    public int getKinopoiskSessions() {
+        if (kinopoiskSessions != null) {
+            return Math.max(1, kinopoiskSessions);
+        }
+        return DEFAULT_KINOPOISK_SESSIONS;
+    }
+
+    public void setKinopoiskSessions(int kinopoiskSessions) {
+        this.kinopoiskSessions = kinopoiskSessions;
+    }
+
+    /**
+     *
+     * @return сколько запросов в минуту разрешено к кинопоиску всем сессиям вместе
+     */
+    public int getKinopoiskRequestsPerMinute() {
+        if (kinopoiskRequestsPerMinute != null) {
+            return Math.max(1, kinopoiskRequestsPerMinute);
+        }
+        return DEFAULT_KINOPOISK_REQUESTS_PER_MINUTE;
+    }
+
+    public void setKinopoiskRequestsPerMinute(int kinopoiskRequestsPerMinute) {
+        this.kinopoiskRequestsPerMinute = kinopoiskRequestsPerMinute;
+    }
+
+    /**
+     *
+     * @return сколько запросов к кинопоиску можно сделать подряд без ожидания
+     */
+    public int getKinopoiskBurst() {
+        if (kinopoiskBurst != null) {
+            return Math.max(1, kinopoiskBurst);
+        }
+        return DEFAULT_KINOPOISK_BURST;
+    }
+
+    public void setKinopoiskBurst(int kinopoiskBurst) {
+        this.kinopoiskBurst = kinopoiskBurst;
+    }
+
+    /**
+     *
+     * @return минимальная задержка между запросами к кинопоиску, секунд
+     */
+    public int getKinopoiskMinDelay() {
+        if (kinopoiskMinDelay != null) {
+            return Math.max(0, kinopoiskMinDelay);
+        }
+        return DEFAULT_KINOPOISK_MIN_DELAY;
+    }
+
+    public void setKinopoiskMinDelay(int kinopoiskMinDelay) {
+        this.kinopoiskMinDelay = kinopoiskMinDelay;
+    }
+
+    /**
+     *
+     * @return максимальная задержка между запросами к кинопоиску при капче и ошибках, секунд
+     */
+    public int getKinopoiskMaxDelay() {
+        if (kinopoiskMaxDelay != null) {
+            return Math.max(getKinopoiskMinDelay(), kinopoiskMaxDelay);
+        }
+        return Math.max(getKinopoiskMinDelay(), DEFAULT_KINOPOISK_MAX_DELAY);
+    }
+
+    public void setKinopoiskMaxDelay(int kinopoiskMaxDelay) {
+        this.kinopoiskMaxDelay = kinopoiskMaxDelay;
+    }
+
+    /**
+     *
+     * @return загружать ли страницу киностудий (в СТП сетке киностудий нет)
+     */
+    public boolean isKinopoiskStudios() {
+        if (kinopoiskStudios != null) {
+            return kinopoiskStudios;
+        }
+        return true;
+    }
+
+    public void setKinopoiskStudios(boolean kinopoiskStudios) {
+        this.kinopoiskStudios = kinopoiskStudios;
+    }
+
+    /**
+     *
+     * @return папка для записи загруженных страниц кинопоиска для воспроизведения (пустая строка - не записывать)
+     */
+    public String getKinopoiskReplayDir() {
+        if (kinopoiskReplayDir != null) {
+            return kinopoiskReplayDir;
+        }
+        return "";
+    }
+
+    public void setKinopoiskReplayDir(String kinopoiskReplayDir) {
+        this.kinopoiskReplayDir = kinopoiskReplayDir;
+    }
+
+    /**
+     *
+     * @return искать на кинопоиске сначала фильмы, которые чаще выходили в эфир по плей репортам
+     * (без плей репортов - в порядке СТП сетки), иначе - по алфавиту
+     */
+    public boolean isKinopoiskAiringOrder() {
+        if (kinopoiskAiringOrder != null) {
+            return kinopoiskAiringOrder;
+        }
+        return true;
+    }
+
+    public void setKinopoiskAiringOrder(boolean kinopoiskAiringOrder) {
+        this.kinopoiskAiringOrder = kinopoiskAiringOrder;
+    }
+
     public void save() {
         File outputDir = new File(getOutputDir());
         if (outputDir.isDirectory() && !outputDir.exists()) {
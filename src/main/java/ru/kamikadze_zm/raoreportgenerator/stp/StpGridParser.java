@@ -2,18 +2,31 @@ package ru.kamikadze_zm.raoreportgenerator.stp;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import javax.xml.parsers.ParserConfigurationException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 import ru.kamikadze_zm.raoreportgenerator.ExcelException;
+import ru.kamikadze_zm.raoreportgenerator.ExcelExecutor;
 import ru.kamikadze_zm.raoreportgenerator.MainApp;
 import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
 import ru.kamikadze_zm.raoreportgenerator.settings.StpSettings;
@@ -22,7 +35,10 @@ public class StpGridParser {
 
     private static final Logger LOG = LogManager.getLogger(StpGridParser.class);
 
-    private Set<MovieInfo> movies = new HashSet<>();
+    //непустое значение в этой колонке - признак строки с фильмом
+    private static final int NAME_CHECK_COLUMN_INDEX = 1;
+
+    private Set<MovieInfo> movies = new LinkedHashSet<>();
 
     /**
      *
@@ -42,65 +58,241 @@ public class StpGridParser {
             throw new ExcelException(ExcelException.getExtMessage(fileName, excelExt));
         }
 
-        Workbook wb;
+        StpSettings stpSettings = MainApp.SETTINGS.getStpSettings();
+
+        StpGridSnapshot snapshot = new StpGridSnapshot(file, stpSettings);
+        Set<MovieInfo> cached = snapshot.load();
+        if (cached != null) {
+            movies = cached;
+            return;
+        }
+
+        OPCPackage pkg = null;
         try {
-            wb = new XSSFWorkbook(file);
-        } catch (IOException | InvalidFormatException e) {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            for (int i = 0; i < stpSettings.getSheetIndex() && sheets.hasNext(); i++) {
+                sheets.next().close();
+            }
+            if (!sheets.hasNext()) {
+                LOG.error("Stp grid sheet not found, sheet index: " + stpSettings.getSheetIndex());
+                throw new ExcelException(ExcelException.getIOMessage(fileName));
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader xmlReader = SAXHelper.newXMLReader();
+                xmlReader.setContentHandler(new SheetHandler(stpSettings, sharedStrings));
+                xmlReader.parse(new InputSource(sheet));
+            } catch (StopParsingException e) {
+                //все строки с данными прочитаны
+            }
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException e) {
             LOG.error("Cannot read stp grid: ", e);
             throw new ExcelException(ExcelException.getIOMessage(fileName));
+        } finally {
+            if (pkg != null) {
+                pkg.revert();
+            }
         }
 
-        StpSettings stpSettings = MainApp.SETTINGS.getStpSettings();
+        snapshot.save(movies);
+    }
 
-        Sheet sheet = wb.getSheetAt(stpSettings.getSheetIndex());
+    /**
+     * Разбирает несколько СТП сеток одновременно, по задаче на файл. Одинаковые фильмы (название, страна, год)
+     * из разных сеток попадают в результат один раз, остается фильм из сетки, выбранной раньше.
+     * Фильмы идут в порядке сеток и строк в них
+     *
+     * @param files СТП сетки .xlsx
+     * @return фильмы всех сеток
+     * @throws ExcelException при ошибке разбора любой из сеток
+     */
+    public static Set<MovieInfo> parse(List<File> files) throws ExcelException {
+        List<CompletableFuture<StpGridParser>> tasks = new ArrayList<>(files.size());
+        for (File f : files) {
+            tasks.add(ExcelExecutor.supply(() -> new StpGridParser(f)));
+        }
+        Set<MovieInfo> movies = new LinkedHashSet<>();
+        for (CompletableFuture<StpGridParser> task : tasks) {
+            movies.addAll(ExcelExecutor.get(task).getMovies());
+        }
+        LOG.info("Parsed stp grids: {}, unique movies: {}", files.size(), movies.size());
+        return movies;
+    }
 
-        for (int i = stpSettings.getStartRowIndex(); i <= sheet.getLastRowNum(); i++) {
-            try {
-                Row row = sheet.getRow(i);
+    public Set<MovieInfo> getMovies() {
+        return movies;
+    }
 
-                if (getStringFromCell(row.getCell(1)).isEmpty()) {
-                    continue;
-                }
-                String name = getStringFromCell(row.getCell(stpSettings.getMovieNameColumnIndex()));
-                String genre = getStringFromCell(row.getCell(stpSettings.getGenreColumnIndex()));
-                String country = getStringFromCell(row.getCell(stpSettings.getCountryColumnIndex()));
-                String year = getStringFromCell(row.getCell(stpSettings.getYearColumnIndex()));
-
-                String director = null;
-                if (stpSettings.getDirectorColumnIndex() != -1) {
-                    director = getStringFromCell(row.getCell(stpSettings.getDirectorColumnIndex()));
-                }
-                String composer = null;
-                if (stpSettings.getComposerColumnIndex() != -1) {
-                    composer = getStringFromCell(row.getCell(stpSettings.getComposerColumnIndex()));
-                }
-                String duration = null;
-                if (stpSettings.getDurationColumnIndex() != -1) {
-                    duration = getStringFromCell(row.getCell(stpSettings.getDurationColumnIndex()));
+    private void addMovie(String[] values, StpSettings stpSettings) {
+        if (values[NAME_CHECK_COLUMN_INDEX].isEmpty()) {
+            return;
+        }
+        String name = values[stpSettings.getMovieNameColumnIndex()];
+        String genre = values[stpSettings.getGenreColumnIndex()];
+        String country = values[stpSettings.getCountryColumnIndex()];
+        String year = values[stpSettings.getYearColumnIndex()];
+
+        String director = null;
+        if (stpSettings.getDirectorColumnIndex() != -1) {
+            director = values[stpSettings.getDirectorColumnIndex()];
+        }
+        String composer = null;
+        if (stpSettings.getComposerColumnIndex() != -1) {
+            composer = values[stpSettings.getComposerColumnIndex()];
+        }
+        String duration = null;
+        if (stpSettings.getDurationColumnIndex() != -1) {
+            duration = values[stpSettings.getDurationColumnIndex()];
+        }
+
+        MovieInfo movie = new MovieInfo(name, genre, country, year, director, composer, duration);
+        LOG.info("Parsed stp movie: " + movie);
+        movies.add(movie);
+    }
+
+    /**
+     * Потоковый разбор листа: значения запоминаются только для колонок из настроек СТП сетки,
+     * разбор прекращается после последней строки с данными
+     */
+    private class SheetHandler extends DefaultHandler {
+
+        private final StpSettings stpSettings;
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final boolean[] projection;
+
+        private final StringBuilder text = new StringBuilder();
+        private String[] values;
+        private boolean rowInvalid;
+        private int rowIndex = -1;
+        private int columnIndex;
+        private String cellType;
+        private boolean cellProjected;
+        private boolean inValue;
+        private boolean inText;
+
+        public SheetHandler(StpSettings stpSettings, ReadOnlySharedStringsTable sharedStrings) {
+            this.stpSettings = stpSettings;
+            this.sharedStrings = sharedStrings;
+            int[] columns = {
+                NAME_CHECK_COLUMN_INDEX,
+                stpSettings.getMovieNameColumnIndex(),
+                stpSettings.getGenreColumnIndex(),
+                stpSettings.getCountryColumnIndex(),
+                stpSettings.getYearColumnIndex(),
+                stpSettings.getDirectorColumnIndex(),
+                stpSettings.getComposerColumnIndex(),
+                stpSettings.getDurationColumnIndex()
+            };
+            int max = 0;
+            for (int c : columns) {
+                max = Math.max(max, c);
+            }
+            this.projection = new boolean[max + 1];
+            for (int c : columns) {
+                if (c >= 0) {
+                    projection[c] = true;
                 }
+            }
+        }
 
-                MovieInfo movie = new MovieInfo(name, genre, country, year, director, composer, duration);
-                LOG.info("Parsed stp movie: " + movie);
-                movies.add(movie);
-            } catch (Exception e) {
-                LOG.warn("Parse stp grid exception, row number: " + i, e);
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowIndex = r != null ? Integer.parseInt(r) - 1 : rowIndex + 1;
+                    columnIndex = -1;
+                    values = null;
+                    rowInvalid = false;
+                    if (rowIndex >= stpSettings.getStartRowIndex()) {
+                        values = new String[projection.length];
+                        Arrays.fill(values, "");
+                    }
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    columnIndex = ref != null ? new CellReference(ref).getCol() : columnIndex + 1;
+                    cellType = attributes.getValue("t");
+                    cellProjected = values != null && columnIndex < projection.length && projection[columnIndex];
+                    break;
+                case "v":
+                case "is":
+                    if (cellProjected) {
+                        inValue = true;
+                        inText = "v".equals(localName);
+                        text.setLength(0);
+                    }
+                    break;
+                case "t":
+                    inText = inValue;
+                    break;
+                default:
+                    break;
             }
         }
-    }
 
-    public Set<MovieInfo> getMovies() {
-        return movies;
-    }
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "is":
+                    if (inValue) {
+                        inValue = false;
+                        inText = false;
+                        setValue();
+                    }
+                    break;
+                case "t":
+                    inText = false;
+                    break;
+                case "row":
+                    if (values != null) {
+                        if (rowInvalid) {
+                            LOG.warn("Parse stp grid exception, row number: " + rowIndex);
+                        } else {
+                            addMovie(values, stpSettings);
+                        }
+                    }
+                    break;
+                case "sheetData":
+                    throw new StopParsingException();
+                default:
+                    break;
+            }
+        }
 
-    private String getStringFromCell(Cell c) {
-        if (c == null) {
-            return "";
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText) {
+                text.append(ch, start, length);
+            }
         }
-        CellType type = c.getCellTypeEnum();
-        if (CellType.NUMERIC == type) {
-            return String.valueOf(Double.valueOf(c.getNumericCellValue()).intValue());
-        } else {
-            return c.getStringCellValue().trim();
+
+        private void setValue() {
+            String value = text.toString();
+            try {
+                if (cellType == null || "n".equals(cellType)) {
+                    values[columnIndex] = String.valueOf(Double.valueOf(value).intValue());
+                } else if ("s".equals(cellType)) {
+                    values[columnIndex] = sharedStrings.getEntryAt(Integer.parseInt(value)).trim();
+                } else if ("inlineStr".equals(cellType) || "str".equals(cellType)) {
+                    values[columnIndex] = value.trim();
+                } else {
+                    rowInvalid = true;
+                }
+            } catch (RuntimeException e) {
+                rowInvalid = true;
+            }
         }
     }
+
+    /**
+     * Прерывает разбор листа после последней строки с данными
+     */
+    private static class StopParsingException extends SAXException {
+
+        private static final long serialVersionUID = 1L;
+    }
 }
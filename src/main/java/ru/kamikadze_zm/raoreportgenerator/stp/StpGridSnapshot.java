@@ -0,0 +1,170 @@
+package ru.kamikadze_zm.raoreportgenerator.stp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import ru.kamikadze_zm.raoreportgenerator.MovieInfo;
+import ru.kamikadze_zm.raoreportgenerator.settings.Settings;
+import ru.kamikadze_zm.raoreportgenerator.settings.StpSettings;
+
+/**
+ * Сохраненный результат разбора СТП сетки. Имя файла - sha-256 содержимого сетки, в заголовке
+ * записаны настройки СТП сетки, с которыми она разбиралась. При изменении сетки или настроек
+ * снимок не используется
+ */
+public class StpGridSnapshot {
+
+    private static final Logger LOG = LogManager.getLogger(StpGridSnapshot.class);
+
+    private static final String DIR = Settings.APP_DIR + "stp-snapshots" + File.separator;
+    private static final String EXT = ".bin";
+    private static final int MAGIC = 0x53545047;
+    //2 - фильмы записываются в порядке СТП сетки
+    private static final int VERSION = 2;
+    private static final int MAX_SNAPSHOTS = 10;
+
+    private final File file;
+    private final int[] settings;
+
+    /**
+     *
+     * @param grid файл СТП сетки
+     * @param stpSettings настройки, с которыми разбирается сетка
+     */
+    public StpGridSnapshot(File grid, StpSettings stpSettings) {
+        this.file = getSnapshotFile(grid);
+        this.settings = new int[]{
+            stpSettings.getSheetIndex(),
+            stpSettings.getStartRowIndex(),
+            stpSettings.getMovieNameColumnIndex(),
+            stpSettings.getGenreColumnIndex(),
+            stpSettings.getCountryColumnIndex(),
+            stpSettings.getYearColumnIndex(),
+            stpSettings.getDirectorColumnIndex(),
+            stpSettings.getComposerColumnIndex(),
+            stpSettings.getDurationColumnIndex()
+        };
+    }
+
+    /**
+     *
+     * @return фильмы из снимка или {@code null}, если снимка нет или он сделан с другими настройками
+     */
+    public Set<MovieInfo> load() {
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int[] s = new int[in.readInt()];
+            for (int i = 0; i < s.length; i++) {
+                s[i] = in.readInt();
+            }
+            if (!Arrays.equals(s, settings)) {
+                LOG.info("Stp grid snapshot was made with other stp settings: {}", file.getName());
+                return null;
+            }
+            int count = in.readInt();
+            Set<MovieInfo> movies = new LinkedHashSet<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                movies.add(new MovieInfo(readString(in), readString(in), readString(in), readString(in),
+                        readString(in), readString(in), readString(in)));
+            }
+            file.setLastModified(System.currentTimeMillis());
+            LOG.info("Stp grid loaded from snapshot: {}, movies: {}", file.getName(), count);
+            return movies;
+        } catch (IOException e) {
+            LOG.warn("Cannot read stp grid snapshot: ", e);
+            return null;
+        }
+    }
+
+    public void save(Set<MovieInfo> movies) {
+        if (file == null) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(settings.length);
+            for (int s : settings) {
+                out.writeInt(s);
+            }
+            out.writeInt(movies.size());
+            for (MovieInfo m : movies) {
+                writeString(out, m.getName());
+                writeString(out, m.getGenre());
+                writeString(out, m.getCountry());
+                writeString(out, m.getYear());
+                writeString(out, m.getDirector());
+                writeString(out, m.getComposer());
+                writeString(out, m.getDuration());
+            }
+        } catch (IOException e) {
+            LOG.warn("Cannot write stp grid snapshot: ", e);
+            file.delete();
+            return;
+        }
+        removeOldSnapshots();
+    }
+
+    private static File getSnapshotFile(File grid) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = new FileInputStream(grid)) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest()) {
+                name.append(String.format("%02x", b));
+            }
+            return new File(DIR + name + EXT);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            LOG.warn("Cannot calculate stp grid hash: ", e);
+            return null;
+        }
+    }
+
+    private static void removeOldSnapshots() {
+        File[] files = new File(DIR).listFiles((dir, name) -> name.endsWith(EXT));
+        if (files == null || files.length <= MAX_SNAPSHOTS) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = MAX_SNAPSHOTS; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,191 @@
+package ru.kamikadze_zm.raoreportgenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Архивы {@link ParallelZipWriter} и книги {@link StreamingWorkbook} записываются и читаются обратно
+ * через {@link ZipInputStream}, {@link ZipFile} и POI. Файлы больше блока сжатия проверяют склейку блоков
+ */
+public class ParallelZipWriterTest {
+
+    private static final int ROWS = 20000;
+    private static final int CELLS = 8;
+
+    private static Map<String, byte[]> entries;
+
+    /**
+     * Пустой файл, файл меньше блока, файл ровно в несколько блоков и большой файл
+     * со сжимаемой и несжимаемой частями
+     */
+    @BeforeClass
+    public static void createEntries() {
+        Random random = new Random(42);
+        entries = new LinkedHashMap<>();
+        entries.put("empty.txt", new byte[0]);
+        entries.put("small.xml", "<root>Название фильма</root>".getBytes(StandardCharsets.UTF_8));
+
+        byte[] blocks = new byte[4 * 256 * 1024];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = (byte) ('a' + random.nextInt(4));
+        }
+        entries.put("dir/blocks.bin", blocks);
+
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 3 * 1024 * 1024) {
+            sb.append("<row r=\"").append(sb.length()).append("\"><c t=\"inlineStr\"><is><t>Фильм ")
+                    .append(random.nextInt(1000)).append("</t></is></c></row>");
+        }
+        byte[] text = sb.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] noise = new byte[700 * 1024];
+        random.nextBytes(noise);
+        byte[] large = Arrays.copyOf(text, text.length + noise.length);
+        System.arraycopy(noise, 0, large, text.length, noise.length);
+        entries.put("dir/large.xml", large);
+    }
+
+    @Test
+    public void testStored() throws IOException {
+        checkZip(0);
+    }
+
+    @Test
+    public void testFastest() throws IOException {
+        checkZip(1);
+    }
+
+    @Test
+    public void testDefault() throws IOException {
+        checkZip(6);
+    }
+
+    @Test
+    public void testBest() throws IOException {
+        checkZip(9);
+    }
+
+    @Test
+    public void testWorkbook() throws Exception {
+        checkWorkbook(false);
+    }
+
+    @Test
+    public void testParallelWorkbook() throws Exception {
+        checkWorkbook(true);
+    }
+
+    private void checkZip(int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelZipWriter zip = new ParallelZipWriter(out, level)) {
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                zip.putEntry(e.getKey(), new ByteArrayInputStream(e.getValue()));
+            }
+        }
+        byte[] archive = out.toByteArray();
+
+        Map<String, byte[]> read = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry ze;
+            while ((ze = in.getNextEntry()) != null) {
+                read.put(ze.getName(), IOUtils.toByteArray(in));
+            }
+        }
+        assertEntries(read);
+
+        File file = File.createTempFile("parallel-zip-test", ".zip");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(file)) {
+                fos.write(archive);
+            }
+            read.clear();
+            try (ZipFile zf = new ZipFile(file)) {
+                Enumeration<? extends ZipEntry> en = zf.entries();
+                while (en.hasMoreElements()) {
+                    ZipEntry ze = en.nextElement();
+                    try (InputStream is = zf.getInputStream(ze)) {
+                        read.put(ze.getName(), IOUtils.toByteArray(is));
+                    }
+                }
+            }
+            assertEntries(read);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void assertEntries(Map<String, byte[]> actual) {
+        assertEquals(entries.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+            assertArrayEquals(e.getKey(), e.getValue(), actual.get(e.getKey()));
+        }
+    }
+
+    private void checkWorkbook(boolean parallel) throws Exception {
+        File file = File.createTempFile("parallel-zip-test", ".xlsx");
+        try {
+            StreamingWorkbook workbook = new StreamingWorkbook(6, parallel);
+            try {
+                Sheet sheet = workbook.createSheet();
+                for (int r = 0; r < ROWS; r++) {
+                    Row row = sheet.createRow(r);
+                    for (int c = 0; c < CELLS; c++) {
+                        row.createCell(c).setCellValue(getCellValue(r, c));
+                    }
+                }
+                try (FileOutputStream out = new FileOutputStream(file)) {
+                    workbook.write(out);
+                }
+            } finally {
+                workbook.dispose();
+            }
+
+            try (ZipFile zf = new ZipFile(file)) {
+                Enumeration<? extends ZipEntry> en = zf.entries();
+                while (en.hasMoreElements()) {
+                    try (InputStream is = zf.getInputStream(en.nextElement())) {
+                        IOUtils.toByteArray(is);
+                    }
+                }
+            }
+
+            try (XSSFWorkbook wb = new XSSFWorkbook(file)) {
+                Sheet sheet = wb.getSheetAt(0);
+                assertEquals(ROWS - 1, sheet.getLastRowNum());
+                for (int r = 0; r < ROWS; r++) {
+                    Row row = sheet.getRow(r);
+                    for (int c = 0; c < CELLS; c++) {
+                        assertEquals(getCellValue(r, c), row.getCell(c).getStringCellValue());
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static String getCellValue(int row, int column) {
+        return "Фильм " + row + " / колонка " + column;
+    }
+}
@@ -0,0 +1,129 @@
+package ru.kamikadze_zm.raoreportgenerator.kinopoisk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Загрузка страниц с локального http сервера: перенаправления с куками, сжатие gzip и определение кодировки
+ */
+public class HttpPageLoaderTest {
+
+    private static final Charset CP1251 = Charset.forName("cp1251");
+    private static final String TITLE = "Мама мия! (2008)";
+    private static final String HTML = "<html><head><title>" + TITLE + "</title></head><body>Киностудия</body></html>";
+
+    private static HttpServer server;
+    private static String host;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        //поиск отвечает перенаправлением и ставит куку, без нее страница фильма недоступна
+        server.createContext("/index.php", e -> {
+            e.getResponseHeaders().add("Set-Cookie", "session=42; Path=/");
+            redirect(e, 302, "/film/123/");
+        });
+        server.createContext("/film/123/", e -> {
+            List<String> cookies = e.getRequestHeaders().get("Cookie");
+            if (cookies == null || !String.join(";", cookies).contains("session=42")) {
+                send(e, 403, "text/html", new byte[0], false);
+                return;
+            }
+            redirect(e, 301, host + "/film/123/page/");
+        });
+        server.createContext("/film/123/page/", e -> {
+            send(e, 200, "text/html; charset=windows-1251", HTML.getBytes(CP1251), true);
+        });
+        server.createContext("/cp1251/", e -> {
+            send(e, 200, "text/html", HTML.getBytes(CP1251), true);
+        });
+        server.createContext("/utf8/", e -> {
+            send(e, 200, "text/html", HTML.getBytes(StandardCharsets.UTF_8), false);
+        });
+        server.createContext("/loop/", e -> {
+            redirect(e, 302, "/loop/");
+        });
+        server.createContext("/missing/", e -> {
+            send(e, 404, "text/html", new byte[0], false);
+        });
+        server.start();
+        host = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRedirectsWithCookies() throws Exception {
+        HttpPageLoader loader = new HttpPageLoader();
+        Page page = load(loader, "/index.php?level=7&kp_query=mama");
+        assertEquals(host + "/film/123/page/", page.getLocation());
+        assertEquals(HTML, page.getHtml());
+        assertEquals(TITLE, page.getDocument().title());
+    }
+
+    @Test
+    public void testCharsetDetection() throws Exception {
+        HttpPageLoader loader = new HttpPageLoader();
+        assertEquals(HTML, load(loader, "/cp1251/").getHtml());
+        assertEquals(HTML, load(loader, "/utf8/").getHtml());
+    }
+
+    @Test
+    public void testFailedLoad() throws Exception {
+        HttpPageLoader loader = new HttpPageLoader();
+        assertNull(load(loader, "/missing/"));
+        assertNull(load(loader, "/loop/"));
+        //без куки поиска страница фильма недоступна, куки не общие для загрузчиков
+        assertNull(load(loader, "/film/123/"));
+    }
+
+    private static Page load(HttpPageLoader loader, String path) throws Exception {
+        CompletableFuture<Page> loaded = new CompletableFuture<>();
+        loader.setOnLoaded(loaded::complete);
+        loader.loadPage(host + path);
+        return loaded.get(30, TimeUnit.SECONDS);
+    }
+
+    private static void redirect(HttpExchange e, int code, String location) throws IOException {
+        e.getResponseHeaders().add("Location", location);
+        send(e, code, "text/html", new byte[0], false);
+    }
+
+    private static void send(HttpExchange e, int code, String contentType, byte[] body, boolean gzip)
+            throws IOException {
+        byte[] data = body;
+        if (gzip) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+                gz.write(body);
+            }
+            data = out.toByteArray();
+            e.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        e.getResponseHeaders().add("Content-Type", contentType);
+        e.sendResponseHeaders(code, data.length == 0 ? -1 : data.length);
+        try (OutputStream os = e.getResponseBody()) {
+            os.write(data);
+        }
+    }
+}